@@ -0,0 +1,281 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery arithmetic bound to a fixed odd BigInteger modulus. Values are fixed length int arrays of 32 bit limbs,
+ * least significant limb first, so a multiplication is one pass of the CIOS (coarsely integrated operand scanning)
+ * algorithm without the division and the allocations of BigInteger.multiply(...).mod(...).
+ * Values are brought into montgomery form with toMontgomery and back with fromMontgomery, all other operations
+ * work on values in montgomery form and write into a caller supplied array which may be one of the operands.
+ * The context is immutable and can be shared between threads.
+ *
+ * @author benw@wwt
+ */
+public final class BigMontgomeryContext {
+
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private final BigInteger modulus;
+    private final int[] n;
+    private final int length;
+    /** -modulus^-1 mod 2^32 */
+    private final int inverse;
+    /** 2^(32*length) mod modulus, which is 1 in montgomery form */
+    private final int[] one;
+
+    private BigMontgomeryContext(BigInteger modulus) {
+        this.modulus = modulus;
+        this.length = (modulus.bitLength() + 31) >>> 5;
+        this.n = toLimbs(modulus, length);
+        int inv = n[0];
+        for (int i = 0; i < 4; i++) {
+            inv *= 2 - n[0] * inv;
+        }
+        this.inverse = -inv;
+        this.one = toLimbs(BigInteger.ONE.shiftLeft(32 * length).mod(modulus), length);
+    }
+
+    /**
+     * @return the modulus
+     */
+    public BigInteger getModulus() {
+        return modulus;
+    }
+
+    /**
+     * @return number of 32 bit limbs of the values
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return new array with 1 in montgomery form
+     */
+    public int[] getOne() {
+        return one.clone();
+    }
+
+    /**
+     * @return new array with 0
+     */
+    public int[] newValue() {
+        return new int[length];
+    }
+
+    /**
+     * @param a any BigInteger, it is reduced modulo the modulus
+     * @return a*2^(32*length) mod modulus
+     */
+    public int[] toMontgomery(BigInteger a) {
+        return toLimbs(a.shiftLeft(32 * length).mod(modulus), length);
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @return the value in [0,modulus)
+     */
+    public BigInteger fromMontgomery(int[] a) {
+        int[] plainOne = new int[length];
+        plainOne[0] = 1;
+        int[] result = new int[length];
+        multiply(a, plainOne, result);
+        return fromLimbs(result);
+    }
+
+    /**
+     * result = a*b in montgomery form, multiplication and reduction run in one pass over the limbs (FIOS)
+     */
+    public void multiply(int[] a, int[] b, int[] result) {
+        int s = length;
+        int[] n = this.n;
+        long[] t = new long[s + 1];
+        long a0 = a[0] & MASK;
+        long n0 = n[0] & MASK;
+        for (int i = 0; i < s; i++) {
+            long bi = b[i] & MASK;
+            long sum = t[0] + a0 * bi;
+            long productCarry = sum >>> 32;
+            long m = ((int) sum * inverse) & MASK;
+            long reduction = (sum & MASK) + m * n0;
+            long reductionCarry = reduction >>> 32;
+            for (int j = 1; j < s; j++) {
+                sum = t[j] + (a[j] & MASK) * bi + productCarry;
+                productCarry = sum >>> 32;
+                reduction = (sum & MASK) + m * (n[j] & MASK) + reductionCarry;
+                reductionCarry = reduction >>> 32;
+                t[j - 1] = reduction & MASK;
+            }
+            sum = t[s] + productCarry + reductionCarry;
+            t[s - 1] = sum & MASK;
+            t[s] = sum >>> 32;
+        }
+        for (int i = 0; i < s; i++) {
+            result[i] = (int) t[i];
+        }
+        if(t[s] != 0 || compareToModulus(result) >= 0) {
+            subtractModulus(result);
+        }
+    }
+
+    /**
+     * result = a*a in montgomery form
+     */
+    public void square(int[] a, int[] result) {
+        multiply(a, a, result);
+    }
+
+    /**
+     * result = factor*a mod modulus by doubling and adding, cheap for small factors
+     */
+    public void multiply(int[] a, int factor, int[] result) {
+        long k = Math.abs((long) factor);
+        int[] x = a.clone();
+        Arrays.fill(result, 0);
+        while(k != 0) {
+            if((k & 1) != 0) add(result, x, result);
+            k >>>= 1;
+            if(k != 0) add(x, x, x);
+        }
+        if(factor < 0) subtract(new int[length], result, result);
+    }
+
+    /**
+     * result = a+b mod modulus
+     */
+    public void add(int[] a, int[] b, int[] result) {
+        long carry = 0;
+        for (int i = 0; i < length; i++) {
+            long sum = (a[i] & MASK) + (b[i] & MASK) + carry;
+            result[i] = (int) sum;
+            carry = sum >>> 32;
+        }
+        if(carry != 0 || compareToModulus(result) >= 0) {
+            subtractModulus(result);
+        }
+    }
+
+    /**
+     * result = a-b mod modulus
+     */
+    public void subtract(int[] a, int[] b, int[] result) {
+        long borrow = 0;
+        for (int i = 0; i < length; i++) {
+            long difference = (a[i] & MASK) - (b[i] & MASK) - borrow;
+            result[i] = (int) difference;
+            borrow = difference >>> 63;
+        }
+        if(borrow != 0) {
+            long carry = 0;
+            for (int i = 0; i < length; i++) {
+                long sum = (result[i] & MASK) + (n[i] & MASK) + carry;
+                result[i] = (int) sum;
+                carry = sum >>> 32;
+            }
+        }
+    }
+
+    /**
+     * result = a/2 mod modulus, works in and out of montgomery form
+     */
+    public void half(int[] a, int[] result) {
+        long carry = 0;
+        if((a[0] & 1) != 0) {
+            for (int i = 0; i < length; i++) {
+                long sum = (a[i] & MASK) + (n[i] & MASK) + carry;
+                result[i] = (int) sum;
+                carry = sum >>> 32;
+            }
+        }
+        else {
+            System.arraycopy(a, 0, result, 0, length);
+        }
+        for (int i = 0; i < length - 1; i++) {
+            result[i] = (result[i] >>> 1) | (result[i + 1] << 31);
+        }
+        result[length - 1] = (result[length - 1] >>> 1) | ((int) carry << 31);
+    }
+
+    /**
+     * @return true if a is 0
+     */
+    public boolean isZero(int[] a) {
+        for (int limb : a) {
+            if(limb != 0) return false;
+        }
+        return true;
+    }
+
+    private int compareToModulus(int[] a) {
+        for (int i = length - 1; i >= 0; i--) {
+            if(a[i] != n[i]) return Integer.compareUnsigned(a[i], n[i]);
+        }
+        return 0;
+    }
+
+    private void subtractModulus(int[] a) {
+        long borrow = 0;
+        for (int i = 0; i < length; i++) {
+            long difference = (a[i] & MASK) - (n[i] & MASK) - borrow;
+            a[i] = (int) difference;
+            borrow = difference >>> 63;
+        }
+    }
+
+    private static int[] toLimbs(BigInteger value, int length) {
+        int[] limbs = new int[length];
+        for (int i = 0; i < length; i++) {
+            limbs[i] = value.shiftRight(32 * i).intValue();
+        }
+        return limbs;
+    }
+
+    private static BigInteger fromLimbs(int[] limbs) {
+        byte[] bytes = new byte[4 * limbs.length + 1];
+        for (int i = 0; i < limbs.length; i++) {
+            int limb = limbs[limbs.length - 1 - i];
+            bytes[4 * i + 1] = (byte) (limb >>> 24);
+            bytes[4 * i + 2] = (byte) (limb >>> 16);
+            bytes[4 * i + 3] = (byte) (limb >>> 8);
+            bytes[4 * i + 4] = (byte) limb;
+        }
+        return new BigInteger(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "BigMontgomeryContext{" +
+                "modulus=" + modulus +
+                '}';
+    }
+
+    /**
+     * creates a context for the given modulus
+     *
+     * @param modulus odd modulus > 1
+     * @return BigMontgomeryContext instance for modulus
+     * @throws IllegalArgumentException if modulus is even or < 3
+     */
+    public static BigMontgomeryContext getInstance(BigInteger modulus) {
+        if(!modulus.testBit(0) || modulus.compareTo(BigInteger.ONE) <= 0) {
+            throw new IllegalArgumentException("montgomery arithmetic needs an odd modulus > 1");
+        }
+        return new BigMontgomeryContext(modulus);
+    }
+}
@@ -14,7 +14,9 @@
  */
 package com.wwt.tools.mathtools;
 
-import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Some helper functions
@@ -25,48 +27,340 @@ public final class MathTool {
 
     private MathTool() {}
 
+    private static final long LOWER_32_BITS = 0xFFFFFFFFL;
+    private static final int PARALLEL_BATCH_THRESHOLD = 1 << 12;
+    private static final long MAX_SQRT = 3037000499L;
+    private static final long MAX_CBRT = 2097151L;
+    private static final int [] PRIME_EXPONENTS = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61};
+    private static final boolean [] SQUARE_MOD_64 = quadraticResidues(64);
+    private static final boolean [] SQUARE_MOD_63 = quadraticResidues(63);
+    private static final boolean [] SQUARE_MOD_65 = quadraticResidues(65);
+    private static final boolean [] SQUARE_MOD_11 = quadraticResidues(11);
+
     /**
+     * computes base^exp mod |mod| without overflow for the whole long range. For odd moduli the computation is done
+     * in a {@link MontgomeryContext}, even moduli use the allocation free multiplyModuloUnsigned.
      *
      * @throws IllegalArgumentException if mod = 0
      */
     public static long exponentiationModulo(long base, long exp, long mod) {
         if(mod == 0) throw new IllegalArgumentException("parameter mod = 0; modulo 0 not allowed");
+        long m = mod < 0 ? -mod : mod;
+        if(m == 1) return 0;
+        long b = reduceModulo(base, m);
+        if(exp <= 0) return 1;
+        if((m & 1) == 1) return MontgomeryContext.getInstance(m).modPow(b, exp);
         long x = 1;
-        long y = base;
+        long y = b;
         while(exp > 0){
-            if(exp % 2 == 1){
-                x = (x*y) % mod;
+            if((exp & 1) == 1){
+                x = multiplyModuloUnsigned(x, y, m);
+            }
+            y = multiplyModuloUnsigned(y, y, m);
+            exp >>>= 1;
+        }
+        return x;
+    }
+
+    /**
+     * batch version of exponentiationModulo: computes results[i] = bases[i]^exp mod |mod| for all bases.
+     * The exponent and the montgomery setup are shared by all bases and nothing is allocated.
+     * bases and results may be the same array.
+     *
+     * @param bases the bases
+     * @param exp the shared exponent
+     * @param mod the shared modulus
+     * @param results caller supplied array receiving the results, at least as long as bases
+     * @throws IllegalArgumentException if mod = 0 or results is too short
+     */
+    public static void exponentiationModulo(long[] bases, long exp, long mod, long[] results) {
+        if(results.length < bases.length) throw new IllegalArgumentException("result array is too short");
+        exponentiationModulo(bases, exp, mod, results, 0, bases.length);
+    }
+
+    /**
+     * batch version of exponentiationModulo which splits large batches into chunks computed on the given pool
+     *
+     * @param bases the bases
+     * @param exp the shared exponent
+     * @param mod the shared modulus
+     * @param results caller supplied array receiving the results, at least as long as bases
+     * @param pool the pool used for large batches
+     * @throws IllegalArgumentException if mod = 0 or results is too short
+     */
+    public static void exponentiationModulo(long[] bases, long exp, long mod, long[] results, ForkJoinPool pool) {
+        if(results.length < bases.length) throw new IllegalArgumentException("result array is too short");
+        if(mod == 0) throw new IllegalArgumentException("parameter mod = 0; modulo 0 not allowed");
+        if(bases.length <= PARALLEL_BATCH_THRESHOLD) {
+            exponentiationModulo(bases, exp, mod, results, 0, bases.length);
+        }
+        else {
+            pool.invoke(new BatchExponentiationTask(bases, exp, mod, results, 0, bases.length));
+        }
+    }
+
+    private static void exponentiationModulo(long[] bases, long exp, long mod, long[] results, int fromIndex, int toIndex) {
+        if(mod == 0) throw new IllegalArgumentException("parameter mod = 0; modulo 0 not allowed");
+        long m = mod < 0 ? -mod : mod;
+        for (int i = fromIndex; i < toIndex; i++) {
+            results[i] = m == 1 ? 0 : reduceModulo(bases[i], m);
+        }
+        if(m == 1) return;
+        if(exp <= 0) {
+            Arrays.fill(results, fromIndex, toIndex, 1L);
+        }
+        else if((m & 1) == 1) {
+            MontgomeryContext.getInstance(m).modPow(results, fromIndex, toIndex, exp, results);
+        }
+        else {
+            for (int i = fromIndex; i < toIndex; i++) {
+                results[i] = exponentiationModulo(results[i], exp, m);
             }
-            y = (y*y) % mod;
-            exp /= 2;
         }
-        return x % mod;
+    }
+
+    private static final class BatchExponentiationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] bases;
+        private final long exp;
+        private final long mod;
+        private final long[] results;
+        private final int fromIndex;
+        private final int toIndex;
+
+        private BatchExponentiationTask(long[] bases, long exp, long mod, long[] results, int fromIndex, int toIndex) {
+            this.bases = bases;
+            this.exp = exp;
+            this.mod = mod;
+            this.results = results;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if(toIndex - fromIndex <= PARALLEL_BATCH_THRESHOLD) {
+                exponentiationModulo(bases, exp, mod, results, fromIndex, toIndex);
+                return;
+            }
+            int middle = (fromIndex + toIndex) >>> 1;
+            invokeAll(new BatchExponentiationTask(bases, exp, mod, results, fromIndex, middle),
+                    new BatchExponentiationTask(bases, exp, mod, results, middle, toIndex));
+        }
     }
 
     /**
+     * reduces value into [0,m) where m is interpreted unsigned
+     */
+    private static long reduceModulo(long value, long m) {
+        long r = value >= 0 ? Long.remainderUnsigned(value, m) : Long.remainderUnsigned(-value, m);
+        return value < 0 && r != 0 ? m - r : r;
+    }
+
+    /**
+     * computes m*n mod mod without allocating objects, the result is always in [0,mod)
      *
-     * @param m
-     * @param n
-     * @param mod
-     * @return
+     * @param m first factor
+     * @param n second factor
+     * @param mod the modulus
+     * @return m*n mod mod
+     * @throws ArithmeticException if mod is not positive
      */
     public static long multiplyModulo(long m, long n, long mod) {
-        return BigInteger.valueOf(m).multiply(BigInteger.valueOf(n)).mod(BigInteger.valueOf(mod)).longValue();
+        if(mod <= 0) throw new ArithmeticException("modulus not positive");
+        return multiplyModuloUnsigned(Math.floorMod(m, mod), Math.floorMod(n, mod), mod);
+    }
+
+    /**
+     * computes a*b mod mod where all parameters and the result are interpreted as unsigned 64 bit numbers
+     *
+     * @param a first factor (unsigned)
+     * @param b second factor (unsigned)
+     * @param mod the modulus (unsigned), must not be 0
+     * @return a*b mod mod (unsigned)
+     */
+    public static long multiplyModuloUnsigned(long a, long b, long mod) {
+        if(Long.compareUnsigned(a, mod) >= 0) a = Long.remainderUnsigned(a, mod);
+        if(Long.compareUnsigned(b, mod) >= 0) b = Long.remainderUnsigned(b, mod);
+        long high = multiplyHighUnsigned(a, b);
+        if(high == 0) return Long.remainderUnsigned(a * b, mod);
+        return remainderUnsigned(high, a * b, mod);
+    }
+
+    /**
+     * returns the upper 64 bits of the unsigned 128 bit product of x and y
+     *
+     * @param x first factor (unsigned)
+     * @param y second factor (unsigned)
+     * @return the high word of x*y
+     */
+    public static long multiplyHighUnsigned(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & LOWER_32_BITS;
+        long y1 = y >> 32;
+        long y2 = y & LOWER_32_BITS;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & LOWER_32_BITS;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        long signedHigh = x1 * y1 + z0 + (z1 >> 32);
+        return signedHigh + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * computes (high*2^64 + low) mod divisor for unsigned values (two digit long division of Knuth)
+     *
+     * @param high upper word of the dividend, must be smaller than divisor (unsigned)
+     * @param low lower word of the dividend
+     * @param divisor the divisor (unsigned), must not be 0
+     * @return the remainder (unsigned)
+     */
+    static long remainderUnsigned(long high, long low, long divisor) {
+        int shift = Long.numberOfLeadingZeros(divisor);
+        if(shift > 0) {
+            divisor <<= shift;
+            high = (high << shift) | (low >>> (64 - shift));
+            low <<= shift;
+        }
+        long divisorHigh = divisor >>> 32;
+        long divisorLow = divisor & LOWER_32_BITS;
+        long rest = remainderStep(high, low >>> 32, divisor, divisorHigh, divisorLow);
+        rest = remainderStep(rest, low & LOWER_32_BITS, divisor, divisorHigh, divisorLow);
+        return rest >>> shift;
+    }
+
+    private static long remainderStep(long high, long digit, long divisor, long divisorHigh, long divisorLow) {
+        long qhat = Long.divideUnsigned(high, divisorHigh);
+        long rhat = high - qhat * divisorHigh;
+        while((qhat >>> 32) != 0 || Long.compareUnsigned(qhat * divisorLow, (rhat << 32) | digit) > 0) {
+            qhat--;
+            rhat += divisorHigh;
+            if((rhat >>> 32) != 0) break;
+        }
+        return (high << 32) + digit - qhat * divisor;
     }
 
 
     /**
      * returns true if the number is a perfect square of 2 Integers
+     * About 99% of the non squares are rejected by quadratic residue tables modulo 64, 63, 65 and 11 before the exact
+     * integer square root is computed.
      *
      * @param number to check
      * @return true if the number can be calculated by m*m
      */
     public static boolean isSquare(long number) {
-        long sqrt = (long) Math.sqrt(number);
-        return sqrt * sqrt == number || (sqrt + 1) * (sqrt + 1) == number;
+        if(number < 0 || !SQUARE_MOD_64[(int) number & 63]) return false;
+        int residue = (int) (number % 45045);
+        if(!SQUARE_MOD_63[residue % 63] || !SQUARE_MOD_65[residue % 65] || !SQUARE_MOD_11[residue % 11]) return false;
+        long root = isqrt(number);
+        return root * root == number;
+    }
+
+    /**
+     * exact integer square root
+     *
+     * @param number non negative number
+     * @return floor(sqrt(number))
+     * @throws IllegalArgumentException if number < 0
+     */
+    public static long isqrt(long number) {
+        if(number < 0) throw new IllegalArgumentException("square root of negative number");
+        long root = Math.min((long) Math.sqrt(number), MAX_SQRT);
+        while(root * root > number) root--;
+        while(root < MAX_SQRT && (root + 1) * (root + 1) <= number) root++;
+        return root;
+    }
+
+    /**
+     * exact integer cube root
+     *
+     * @param number non negative number
+     * @return floor(cbrt(number))
+     * @throws IllegalArgumentException if number < 0
+     */
+    public static long icbrt(long number) {
+        if(number < 0) throw new IllegalArgumentException("cube root of negative number");
+        long root = Math.min((long) Math.cbrt(number), MAX_CBRT);
+        while(root * root * root > number) root--;
+        while(root < MAX_CBRT && (root + 1) * (root + 1) * (root + 1) <= number) root++;
+        return root;
     }
 
+    /**
+     * exact integer k-th root
+     *
+     * @param number non negative number
+     * @param k the degree of the root, k >= 1
+     * @return floor(number^(1/k))
+     * @throws IllegalArgumentException if number < 0 or k < 1
+     */
+    public static long iroot(long number, int k) {
+        if(number < 0) throw new IllegalArgumentException("root of negative number");
+        if(k < 1) throw new IllegalArgumentException("degree of root must be positive");
+        if(k == 1) return number;
+        if(k == 2) return isqrt(number);
+        if(k == 3) return icbrt(number);
+        if(k >= 63 || number < 2) return Math.min(number, 1);
+        long root = (long) Math.pow(number, 1.0 / k);
+        while(powerExceeds(root, k, number)) root--;
+        while(!powerExceeds(root + 1, k, number)) root++;
+        return root;
+    }
 
+    /**
+     * checks if number = m^k for some integers m and k >= 2
+     *
+     * @param number number to check
+     * @return true if number is a perfect power, 0 and 1 are perfect powers, negative numbers are not
+     */
+    public static boolean isPerfectPower(long number) {
+        if(number < 0) return false;
+        return number < 2 || perfectPowerExponent(number) > 1;
+    }
 
+    /**
+     * returns the largest k such that number = m^k, the base is then iroot(number,k)
+     *
+     * @param number number >= 2
+     * @return the largest exponent k, 1 if number is no perfect power
+     * @throws IllegalArgumentException if number < 2
+     */
+    public static int perfectPowerExponent(long number) {
+        if(number < 2) throw new IllegalArgumentException("number must be at least 2");
+        int maxExponent = 63 - Long.numberOfLeadingZeros(number);
+        for(int i = 0; i < PRIME_EXPONENTS.length && PRIME_EXPONENTS[i] <= maxExponent; i++) {
+            int p = PRIME_EXPONENTS[i];
+            if(p == 2 && !isSquare(number)) continue;
+            long root = iroot(number, p);
+            // root^p <= number holds, so root^p > number-1 means equality
+            if(powerExceeds(root, p, number - 1)) {
+                return p * perfectPowerExponent(root);
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * checks base^exp > limit without overflow, base and limit must not be negative
+     */
+    private static boolean powerExceeds(long base, int exp, long limit) {
+        if(base == 0) return false;
+        long result = 1;
+        for(int i = 0; i < exp; i++) {
+            if(result > limit / base) return true;
+            result *= base;
+        }
+        return false;
+    }
 
+    private static boolean [] quadraticResidues(int mod) {
+        boolean [] returnValue = new boolean[mod];
+        for(int i = 0; i < mod; i++) {
+            returnValue[(i * i) % mod] = true;
+        }
+        return returnValue;
+    }
 }
@@ -0,0 +1,247 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools;
+
+/**
+ * Montgomery arithmetic bound to a fixed odd modulus. The modulus and all values are interpreted as unsigned 64 bit numbers,
+ * so the whole range up to 2^64-1 can be used without overflow and without allocating BigIntegers.
+ * Values are brought into montgomery form with toMontgomery and back with fromMontgomery, all other operations
+ * (multiply, square, pow, add, subtract) work on values in montgomery form.
+ *
+ * @author benw@wwt
+ */
+public final class MontgomeryContext {
+
+    private final long modulus;
+    /** modulus^-1 mod 2^64 */
+    private final long inverse;
+    /** 2^64 mod modulus, which is 1 in montgomery form */
+    private final long one;
+    /** 2^128 mod modulus, used to convert into montgomery form */
+    private final long rSquare;
+
+    private MontgomeryContext(long modulus) {
+        this.modulus = modulus;
+        long inv = modulus;
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - modulus * inv;
+        }
+        this.inverse = inv;
+        this.one = Long.remainderUnsigned(-modulus, modulus);
+        this.rSquare = MathTool.multiplyModuloUnsigned(one, one, modulus);
+    }
+
+    /**
+     * @return the modulus (unsigned)
+     */
+    public long getModulus() {
+        return modulus;
+    }
+
+    /**
+     * @return 1 in montgomery form
+     */
+    public long getOne() {
+        return one;
+    }
+
+    /**
+     * converts a into montgomery form
+     *
+     * @param a any unsigned value, it is reduced modulo the modulus first
+     * @return a*2^64 mod modulus
+     */
+    public long toMontgomery(long a) {
+        if (Long.compareUnsigned(a, modulus) >= 0) a = Long.remainderUnsigned(a, modulus);
+        return multiply(a, rSquare);
+    }
+
+    /**
+     * converts a out of montgomery form
+     *
+     * @param a value in montgomery form
+     * @return the value in [0,modulus)
+     */
+    public long fromMontgomery(long a) {
+        return reduce(0, a);
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @param b value in montgomery form
+     * @return a*b in montgomery form
+     */
+    public long multiply(long a, long b) {
+        return reduce(MathTool.multiplyHighUnsigned(a, b), a * b);
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @return a*a in montgomery form
+     */
+    public long square(long a) {
+        return reduce(MathTool.multiplyHighUnsigned(a, a), a * a);
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @param b value in montgomery form
+     * @return a+b in montgomery form
+     */
+    public long add(long a, long b) {
+        long sum = a + b;
+        if (Long.compareUnsigned(sum, a) < 0 || Long.compareUnsigned(sum, modulus) >= 0) sum -= modulus;
+        return sum;
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @param b value in montgomery form
+     * @return a-b in montgomery form
+     */
+    public long subtract(long a, long b) {
+        long difference = a - b;
+        return Long.compareUnsigned(a, b) < 0 ? difference + modulus : difference;
+    }
+
+    /**
+     * @param a value in montgomery form
+     * @return -a in montgomery form
+     */
+    public long negate(long a) {
+        return a == 0 ? 0 : modulus - a;
+    }
+
+    /**
+     * left to right binary exponentiation
+     *
+     * @param base value in montgomery form
+     * @param exp the exponent (unsigned)
+     * @return base^exp in montgomery form
+     */
+    public long pow(long base, long exp) {
+        long x = one;
+        for (int i = 63 - Long.numberOfLeadingZeros(exp); i >= 0; i--) {
+            x = square(x);
+            if (((exp >>> i) & 1) != 0) {
+                x = multiply(x, base);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * convenience method working on ordinary values, converts in and out of montgomery form
+     *
+     * @param base the base (unsigned)
+     * @param exp the exponent (unsigned)
+     * @return base^exp mod modulus
+     */
+    public long modPow(long base, long exp) {
+        return fromMontgomery(pow(toMontgomery(base), exp));
+    }
+
+    /**
+     * batch version of modPow for many bases and a shared exponent. The bases are processed in groups of four lanes
+     * which share the bit scan of the exponent, nothing is allocated. bases and results may be the same array.
+     *
+     * @param bases the bases (unsigned)
+     * @param fromIndex first index to process (inclusive)
+     * @param toIndex last index to process (exclusive)
+     * @param exp the exponent (unsigned)
+     * @param results array receiving bases[i]^exp mod modulus at index i
+     */
+    public void modPow(long[] bases, int fromIndex, int toIndex, long exp, long[] results) {
+        if (exp == 0) {
+            long plainOne = fromMontgomery(one);
+            for (int i = fromIndex; i < toIndex; i++) {
+                results[i] = plainOne;
+            }
+            return;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(exp);
+        int i = fromIndex;
+        for (; i + 4 <= toIndex; i += 4) {
+            long b0 = toMontgomery(bases[i]);
+            long b1 = toMontgomery(bases[i + 1]);
+            long b2 = toMontgomery(bases[i + 2]);
+            long b3 = toMontgomery(bases[i + 3]);
+            long x0 = b0;
+            long x1 = b1;
+            long x2 = b2;
+            long x3 = b3;
+            for (int bit = highestBit - 1; bit >= 0; bit--) {
+                x0 = square(x0);
+                x1 = square(x1);
+                x2 = square(x2);
+                x3 = square(x3);
+                if (((exp >>> bit) & 1) != 0) {
+                    x0 = multiply(x0, b0);
+                    x1 = multiply(x1, b1);
+                    x2 = multiply(x2, b2);
+                    x3 = multiply(x3, b3);
+                }
+            }
+            results[i] = fromMontgomery(x0);
+            results[i + 1] = fromMontgomery(x1);
+            results[i + 2] = fromMontgomery(x2);
+            results[i + 3] = fromMontgomery(x3);
+        }
+        for (; i < toIndex; i++) {
+            results[i] = modPow(bases[i], exp);
+        }
+    }
+
+    /**
+     * convenience method working on ordinary values, needs only one montgomery conversion
+     *
+     * @param a first factor (unsigned)
+     * @param b second factor (unsigned)
+     * @return a*b mod modulus
+     */
+    public long modMultiply(long a, long b) {
+        if (Long.compareUnsigned(b, modulus) >= 0) b = Long.remainderUnsigned(b, modulus);
+        return multiply(toMontgomery(a), b);
+    }
+
+    /**
+     * montgomery reduction of high*2^64+low, requires high < modulus
+     */
+    private long reduce(long high, long low) {
+        long m = low * inverse;
+        long mn = MathTool.multiplyHighUnsigned(m, modulus);
+        long t = high - mn;
+        return Long.compareUnsigned(high, mn) < 0 ? t + modulus : t;
+    }
+
+    @Override
+    public String toString() {
+        return "MontgomeryContext{" +
+                "modulus=" + Long.toUnsignedString(modulus) +
+                '}';
+    }
+
+    /**
+     * creates a context for the given modulus
+     *
+     * @param modulus odd modulus (unsigned)
+     * @return MontgomeryContext instance for modulus
+     * @throws IllegalArgumentException if modulus is even
+     */
+    public static MontgomeryContext getInstance(long modulus) {
+        if ((modulus & 1) == 0) throw new IllegalArgumentException("montgomery arithmetic needs an odd modulus");
+        return new MontgomeryContext(modulus);
+    }
+}
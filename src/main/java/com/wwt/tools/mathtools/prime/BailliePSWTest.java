@@ -0,0 +1,267 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.BigMontgomeryContext;
+import com.wwt.tools.mathtools.MathTool;
+import com.wwt.tools.mathtools.MontgomeryContext;
+
+import java.math.BigInteger;
+
+/**
+ * Baillie-PSW test: trial division by the primes up to 47, a strong probable prime test to base 2 and a strong Lucas
+ * probable prime test with the parameters of Selfridge (D the first of 5, -7, 9, -11, ... with (D/n) = -1, P = 1,
+ * Q = (1-D)/4). A D with (D/n) = 0 and |D| != n shares a factor with n, so the search stops there with composite.
+ * No composite passing both tests is known, below 2^64 it is verified that there is none, so the long version is
+ * exact. The lucas test needs 3 multiplications per bit, independent of an iteration count. Longs are tested with
+ * MontgomeryContext, the whole test costs about 4 Miller-Rabin rounds. The lucas test of BigIntegers runs in a
+ * BigMontgomeryContext, which is slower than the montgomery arithmetic behind BigInteger.modPow, so a prime of
+ * 128, 256 or 512 bits costs about 6, 7 or 9 Miller-Rabin rounds (BigInteger.multiply(...).mod(...) is 2 to 3 times
+ * slower still).
+ *
+ * @author benw@wwt
+ */
+public final class BailliePSWTest implements ProbabilisticPrimeTest, PrimeTest {
+
+    private static final int[] SMALL_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47};
+    /** product of SMALL_PRIMES */
+    private static final long SMALL_PRIMORIAL = 614889782588491410L;
+    private static final BigInteger BIG_SMALL_PRIMORIAL = BigInteger.valueOf(SMALL_PRIMORIAL);
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    private static class BailliePSWTestHolder {
+        private static final BailliePSWTest INSTANCE = new BailliePSWTest();
+    }
+
+    private final ModularArithmetic modularArithmetic = ModularArithmetic.getInstance(IterativeGCDAlgorithm.getInstance());
+
+    /**
+     * not instantiatable -> singleton because object is stateless
+     */
+    private BailliePSWTest() {}
+
+    /**
+     * @param numberToTest the input number which should be tested if it is prime
+     * @param iterations ignored, the test has a fixed number of steps
+     * @return true if numberToTest is prime, exact for all longs
+     */
+    @Override
+    public boolean isPrime(long numberToTest, int iterations) {
+        return isPrime(numberToTest);
+    }
+
+    @Override
+    public boolean isPrime(long numberToTest) {
+        if(numberToTest < 2) return false;
+        for (int p : SMALL_PRIMES) {
+            if(numberToTest % p == 0) return numberToTest == p;
+        }
+        if(numberToTest < 53 * 53) return true;
+
+        MontgomeryContext context = MontgomeryContext.getInstance(numberToTest);
+        int twos = Long.numberOfTrailingZeros(numberToTest - 1);
+        if(!MillerRabinTest.isStrongProbablePrime(context, context.toMontgomery(2), (numberToTest - 1) >>> twos, twos)) {
+            return false;
+        }
+        if(MathTool.isSquare(numberToTest)) return false;
+        long d = selfridgeD(numberToTest);
+        return d != 0 && isStrongLucasProbablePrime(context, d);
+    }
+
+    /**
+     * the iterations are ignored, the test is the same for every call
+     */
+    @Override
+    public boolean isPrime(BigInteger numberToTest, int iterations) {
+        return isPrime(numberToTest);
+    }
+
+    /**
+     * @param numberToTest the input number which should be tested if it is prime
+     * @return true if numberToTest is a Baillie-PSW probable prime, false if it is for sure not prime
+     */
+    public boolean isPrime(BigInteger numberToTest) {
+        if(numberToTest.bitLength() < 63) return isPrime(numberToTest.longValue());
+        if(numberToTest.signum() < 0) return false;
+        long residue = numberToTest.mod(BIG_SMALL_PRIMORIAL).longValue();
+        for (int p : SMALL_PRIMES) {
+            if(residue % p == 0) return false;
+        }
+        BigInteger minusOne = numberToTest.subtract(BigInteger.ONE);
+        int twos = minusOne.getLowestSetBit();
+        BigInteger x = TWO.modPow(minusOne.shiftRight(twos), numberToTest);
+        if(!x.equals(BigInteger.ONE) && !x.equals(minusOne)) {
+            int r = 1;
+            for (; r < twos; r++) {
+                x = x.multiply(x).mod(numberToTest);
+                if(x.equals(minusOne)) break;
+                if(x.equals(BigInteger.ONE)) return false;
+            }
+            if(r == twos) return false;
+        }
+        if(isSquare(numberToTest)) return false;
+        long d = selfridgeD(numberToTest);
+        return d != 0 && isStrongLucasProbablePrime(numberToTest, d);
+    }
+
+    /**
+     * @return the first D in 5, -7, 9, -11, ... with (D/n) = -1 or 0 if a D before it has (D/n) = 0 and |D| != n,
+     * then n is composite, n must not be a square
+     */
+    private long selfridgeD(long n) {
+        long d = 5;
+        int symbol;
+        while((symbol = modularArithmetic.jacobiSymbol(d, n)) != -1) {
+            if(symbol == 0 && Math.abs(d) != n) return 0;
+            d = d > 0 ? -d - 2 : -d + 2;
+        }
+        return d;
+    }
+
+    /**
+     * @return the first D in 5, -7, 9, -11, ... with (D/n) = -1 or 0 if a D before it has (D/n) = 0, |D| < n as n
+     * has at least 63 bits, n must not be a square
+     */
+    private long selfridgeD(BigInteger n) {
+        long d = 5;
+        int symbol;
+        while((symbol = jacobiSymbol(d, n)) != -1) {
+            if(symbol == 0) return 0;
+            d = d > 0 ? -d - 2 : -d + 2;
+        }
+        return d;
+    }
+
+    /**
+     * jacobi symbol (d/n) for a small odd d and a big odd n by quadratic reciprocity
+     */
+    private int jacobiSymbol(long d, BigInteger n) {
+        long a = Math.abs(d);
+        int nMod4 = n.intValue() & 3;
+        int symbol = modularArithmetic.jacobiSymbol(n.mod(BigInteger.valueOf(a)).longValue(), a);
+        if((a & 3) == 3 && nMod4 == 3) symbol = -symbol;
+        if(d < 0 && nMod4 == 3) symbol = -symbol;
+        return symbol;
+    }
+
+    /**
+     * strong lucas test with P = 1 and Q = (1-D)/4 in montgomery form. With n+1 = d*2^s the test passes if U_d = 0
+     * or V_(d*2^r) = 0 for some 0 <= r < s.
+     */
+    private static boolean isStrongLucasProbablePrime(MontgomeryContext context, long d) {
+        long n = context.getModulus();
+        long nPlusOne = n + 1;
+        int twos = Long.numberOfTrailingZeros(nPlusOne);
+        long oddRest = nPlusOne >>> twos;
+        long one = context.getOne();
+        long q = toMontgomery(context, (1 - d) / 4);
+        long dMont = toMontgomery(context, d);
+        long u = one;
+        long v = one;
+        long qk = q;
+        for (int bit = 62 - Long.numberOfLeadingZeros(oddRest); bit >= 0; bit--) {
+            // k -> 2k
+            u = context.multiply(u, v);
+            v = context.subtract(context.square(v), context.add(qk, qk));
+            qk = context.square(qk);
+            if(((oddRest >>> bit) & 1) != 0) {
+                // k -> k+1 with P = 1
+                long newU = half(context.add(u, v), n);
+                v = half(context.add(context.multiply(dMont, u), v), n);
+                u = newU;
+                qk = context.multiply(qk, q);
+            }
+        }
+        if(u == 0 || v == 0) return true;
+        for (int r = 1; r < twos; r++) {
+            v = context.subtract(context.square(v), context.add(qk, qk));
+            if(v == 0) return true;
+            qk = context.square(qk);
+        }
+        return false;
+    }
+
+    private static boolean isStrongLucasProbablePrime(BigInteger n, long d) {
+        BigMontgomeryContext context = BigMontgomeryContext.getInstance(n);
+        BigInteger nPlusOne = n.add(BigInteger.ONE);
+        int twos = nPlusOne.getLowestSetBit();
+        BigInteger oddRest = nPlusOne.shiftRight(twos);
+        int q = (int) ((1 - d) / 4);
+        int[] u = context.getOne();
+        int[] v = context.getOne();
+        int[] qk = context.getOne();
+        context.multiply(qk, q, qk);
+        int[] scratch = context.newValue();
+        for (int bit = oddRest.bitLength() - 2; bit >= 0; bit--) {
+            context.multiply(u, v, u);
+            context.square(v, v);
+            context.add(qk, qk, scratch);
+            context.subtract(v, scratch, v);
+            context.square(qk, qk);
+            if(oddRest.testBit(bit)) {
+                context.multiply(u, (int) d, scratch);
+                context.add(u, v, u);
+                context.half(u, u);
+                context.add(scratch, v, v);
+                context.half(v, v);
+                context.multiply(qk, q, qk);
+            }
+        }
+        if(context.isZero(u) || context.isZero(v)) return true;
+        for (int r = 1; r < twos; r++) {
+            context.square(v, v);
+            context.add(qk, qk, scratch);
+            context.subtract(v, scratch, v);
+            if(context.isZero(v)) return true;
+            context.square(qk, qk);
+        }
+        return false;
+    }
+
+    /**
+     * x/2 mod n for x in [0,n) and odd n, works in and out of montgomery form
+     */
+    private static long half(long x, long n) {
+        return (x & 1) == 0 ? x >>> 1 : (x >>> 1) + (n >>> 1) + 1;
+    }
+
+    private static long toMontgomery(MontgomeryContext context, long value) {
+        return value >= 0 ? context.toMontgomery(value) : context.negate(context.toMontgomery(-value));
+    }
+
+    /**
+     * exact square test by newton iteration
+     */
+    private static boolean isSquare(BigInteger n) {
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+        while(true) {
+            BigInteger y = x.add(n.divide(x)).shiftRight(1);
+            if(y.compareTo(x) >= 0) return x.multiply(x).equals(n);
+            x = y;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BailliePSWTest{}";
+    }
+
+    /**
+     * Singleton instance
+     *
+     * @return the one and only BailliePSWTest instance
+     */
+    public static BailliePSWTest getInstance() { return BailliePSWTestHolder.INSTANCE; }
+}
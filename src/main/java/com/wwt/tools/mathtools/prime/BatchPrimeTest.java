@@ -0,0 +1,181 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tests many candidates at once. Every candidate is first checked for a common factor with the primorial 2*...*43:
+ * gcd(n, P) = 1 iff gcd(n mod P, P) = 1, so the primorial is split into three factors and the coprimality of all
+ * residues is precomputed in bitmaps (about 280 KB, built once per class). This removes about 72% of random odd
+ * candidates (86% of all integers) with three divisions and three lookups. The 28% of odd candidates that survive are
+ * tested with the given PrimeTest, in parallel chunks of whole bitmap words if a pool is given, so that no two threads
+ * write the same word.
+ *
+ * @author benw@wwt
+ */
+public final class BatchPrimeTest {
+
+    /** the primorial 2*3*...*43 in three factors */
+    private static final int[] MODULI = {2 * 3 * 5 * 7 * 11 * 13, 17 * 19 * 23 * 29, 31 * 37 * 41 * 43};
+    private static final int[] SMALL_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43};
+    /** bit r of COPRIME[i] is set if gcd(r, MODULI[i]) = 1 */
+    private static final long[][] COPRIME = new long[MODULI.length][];
+    /** candidates below 47^2 are not prefiltered, because the small primes are not coprime to the primorial */
+    private static final long PREFILTER_LIMIT = 47 * 47;
+    /** candidates per parallel chunk, a multiple of 64 */
+    private static final int CHUNK_SIZE = 1 << 10;
+
+    static {
+        for (int i = 0; i < MODULI.length; i++) {
+            int modulus = MODULI[i];
+            long[] coprime = new long[(modulus + 63) >>> 6];
+            for (int r = 0; r < modulus; r++) {
+                coprime[r >>> 6] |= 1L << r;
+            }
+            for (int p : SMALL_PRIMES) {
+                if(modulus % p != 0) continue;
+                for (int r = 0; r < modulus; r += p) {
+                    coprime[r >>> 6] &= ~(1L << r);
+                }
+            }
+            COPRIME[i] = coprime;
+        }
+    }
+
+    private final PrimeTest primeTest;
+    private final ForkJoinPool pool;
+
+    private BatchPrimeTest(PrimeTest primeTest, ForkJoinPool pool) {
+        this.primeTest = primeTest;
+        this.pool = pool;
+    }
+
+    /**
+     *
+     * @param candidates numbers to test
+     * @return bitmap with bit i (bit i%64 of word i/64) set if candidates[i] is prime
+     */
+    public long[] isPrime(long[] candidates) {
+        long[] result = new long[(candidates.length + 63) >>> 6];
+        isPrime(candidates, result);
+        return result;
+    }
+
+    /**
+     * same as isPrime(candidates) but writes into a caller supplied bitmap, so that it can be reused between batches
+     *
+     * @param candidates numbers to test
+     * @param result bitmap with at least (candidates.length+63)/64 words, bit i is set if candidates[i] is prime
+     * @throws IllegalArgumentException if result is too short
+     */
+    public void isPrime(long[] candidates, long[] result) {
+        int words = (candidates.length + 63) >>> 6;
+        if(result.length < words) throw new IllegalArgumentException("result bitmap too short");
+        if(pool == null || candidates.length <= CHUNK_SIZE) {
+            test(candidates, 0, candidates.length, result);
+        }
+        else {
+            pool.invoke(new BatchTask(candidates, 0, candidates.length, result));
+        }
+    }
+
+    private void test(long[] candidates, int fromIndex, int toIndex, long[] result) {
+        for (int word = fromIndex >>> 6; word << 6 < toIndex; word++) {
+            long bits = 0;
+            int end = Math.min(toIndex, (word + 1) << 6);
+            for (int i = word << 6; i < end; i++) {
+                long n = candidates[i];
+                if(mayBePrime(n) && primeTest.isPrime(n)) bits |= 1L << i;
+            }
+            result[word] = bits;
+        }
+    }
+
+    /**
+     * @return false if n < 2 or n >= 47^2 has a prime factor <= 43
+     */
+    private static boolean mayBePrime(long n) {
+        if(n < PREFILTER_LIMIT) return n >= 2;
+        for (int i = 0; i < MODULI.length; i++) {
+            int r = (int) (n % MODULI[i]);
+            if((COPRIME[i][r >>> 6] & (1L << r)) == 0) return false;
+        }
+        return true;
+    }
+
+    private final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] candidates;
+        private final int fromIndex;
+        private final int toIndex;
+        private final long[] result;
+
+        private BatchTask(long[] candidates, int fromIndex, int toIndex, long[] result) {
+            this.candidates = candidates;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if(toIndex - fromIndex <= CHUNK_SIZE) {
+                test(candidates, fromIndex, toIndex, result);
+                return;
+            }
+            // split at a word boundary
+            int middle = ((fromIndex + toIndex) >>> 1) & ~63;
+            invokeAll(new BatchTask(candidates, fromIndex, middle, result), new BatchTask(candidates, middle, toIndex, result));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BatchPrimeTest{" +
+                "primeTest=" + primeTest +
+                ", pool=" + pool +
+                '}';
+    }
+
+    /**
+     *
+     * @return sequential batch test with the deterministic MillerRabinTest
+     */
+    public static BatchPrimeTest getInstance() {
+        return new BatchPrimeTest(MillerRabinTest.getInstance(), null);
+    }
+
+    /**
+     *
+     * @param primeTest test for the candidates which pass the prefilter, e.g. MillerRabinTest or BailliePSWTest
+     * @return sequential batch test
+     */
+    public static BatchPrimeTest getInstance(PrimeTest primeTest) {
+        return new BatchPrimeTest(primeTest, null);
+    }
+
+    /**
+     *
+     * @param primeTest test for the candidates which pass the prefilter, e.g. MillerRabinTest or BailliePSWTest
+     * @param pool pool running the chunks
+     * @return parallel batch test
+     */
+    public static BatchPrimeTest getInstance(PrimeTest primeTest, ForkJoinPool pool) {
+        return new BatchPrimeTest(primeTest, pool);
+    }
+}
@@ -0,0 +1,108 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * The steps the BigInteger factorization algorithms share around their own method: small factors are removed by trial
+ * division, cofactors below 64 bits are left to PollardRhoFactorization, primes are detected by Baillie-PSW and perfect
+ * powers by newton iteration. Only the odd composite cofactors with at least 64 bits which are no perfect power reach
+ * the divisor search of the algorithm.
+ *
+ * @author benw@wwt
+ */
+final class BigFactorSplitter {
+
+    /** primes below this bound are removed by trial division */
+    private static final int TRIAL_DIVISION_BOUND = 1 << 16;
+
+    private BigFactorSplitter() {}
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @param findDivisor returns a non trivial divisor of an odd composite number with at least 64 bits, no perfect
+     *                    power and no factor below 2^16
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    static List<BigInteger> factorize(BigInteger number, UnaryOperator<BigInteger> findDivisor) {
+        if(number.signum() < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
+        List<BigInteger> returnValue = new ArrayList<>();
+        BigInteger toSplit = number;
+        if(toSplit.bitLength() > 63) {
+            PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence(TRIAL_DIVISION_BOUND);
+            for (int i = 0; i < primes.size(); i++) {
+                BigInteger prime = BigInteger.valueOf(primes.getInt(i));
+                BigInteger[] quotientAndRemainder = toSplit.divideAndRemainder(prime);
+                while(quotientAndRemainder[1].signum() == 0) {
+                    returnValue.add(prime);
+                    toSplit = quotientAndRemainder[0];
+                    quotientAndRemainder = toSplit.divideAndRemainder(prime);
+                }
+            }
+        }
+        split(toSplit, findDivisor, returnValue);
+        Collections.sort(returnValue);
+        return returnValue;
+    }
+
+    /**
+     * adds the prime factors of n, n has no factors below TRIAL_DIVISION_BOUND if it has more than 63 bits
+     */
+    private static void split(BigInteger n, UnaryOperator<BigInteger> findDivisor, List<BigInteger> factors) {
+        if(n.bitLength() < 64) {
+            for (long factor : PollardRhoFactorization.getInstance().factorize(n.longValue())) {
+                factors.add(BigInteger.valueOf(factor));
+            }
+            return;
+        }
+        if(BailliePSWTest.getInstance().isPrime(n)) {
+            factors.add(n);
+            return;
+        }
+        // the factors are > 2^16, so only exponents up to bitLength/16 are possible
+        for (int k = 2; k <= n.bitLength() / 16; k++) {
+            BigInteger root = root(n, k);
+            if(root.pow(k).equals(n)) {
+                for (int i = 0; i < k; i++) {
+                    split(root, findDivisor, factors);
+                }
+                return;
+            }
+        }
+        BigInteger divisor = findDivisor.apply(n);
+        split(divisor, findDivisor, factors);
+        split(n.divide(divisor), findDivisor, factors);
+    }
+
+    /**
+     * @return floor(n^(1/k)) by newton iteration
+     */
+    private static BigInteger root(BigInteger n, int k) {
+        BigInteger kBig = BigInteger.valueOf(k);
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + k - 1) / k);
+        while(true) {
+            BigInteger y = x.multiply(BigInteger.valueOf(k - 1)).add(n.divide(x.pow(k - 1))).divide(kBig);
+            if(y.compareTo(x) >= 0) return x;
+            x = y;
+        }
+    }
+}
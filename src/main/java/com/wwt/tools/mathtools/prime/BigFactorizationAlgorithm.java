@@ -0,0 +1,32 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * interface for factorization algorithms working on arbitrary precision numbers
+ * @author benw@wwt
+ */
+public interface BigFactorizationAlgorithm {
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return all prime factors of the given number
+     */
+    List<BigInteger> factorize(BigInteger number);
+}
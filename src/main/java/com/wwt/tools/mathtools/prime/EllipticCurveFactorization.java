@@ -0,0 +1,398 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.BigMontgomeryContext;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lenstra's elliptic curve method on Montgomery curves By^2 = x^3+Ax^2+x with Suyama's parametrization, which
+ * guarantees a group order divisible by 12. Only the x coordinate is kept in projective form (X:Z), so no inversions
+ * are needed, the arithmetic runs in a BigMontgomeryContext. Stage 1 multiplies the start point with all prime
+ * powers up to B1 by the montgomery ladder, stage 2 covers the single primes q in (B1,B2] by a baby step giant step
+ * continuation: with q = m*D +- j both [m*D]Q and [j]Q are known and x([m*D]Q) = x([j]Q) mod p is detected by
+ * multiplying up the differences X_m - x_j*Z_m with the baby steps normalized to Z = 1 by one batch inversion, so
+ * each prime costs two multiplications plus a share of a giant step. The curves are independent, with a pool they
+ * are dealt out to the workers and the first factor wins.
+ * B1 and the number of curves grow with the expected size of the factor (15 to 40 digits), like in GMP-ECM.
+ * Small factors are removed by trial division first, cofactors below 64 bits are left to PollardRhoFactorization.
+ *
+ * @author benw@wwt
+ */
+public final class EllipticCurveFactorization implements BigFactorizationAlgorithm {
+
+    /** stage 1 bounds for factors of 15, 20, 25, 30, 35 and 40 digits */
+    private static final int[] LEVEL_B1 = {2000, 11000, 50000, 250000, 1000000, 3000000};
+    /** expected number of curves to find a factor of the level size */
+    private static final int[] LEVEL_CURVES = {25, 90, 300, 700, 1800, 5100};
+    private static final int B2_FACTOR = 100;
+    /** limits the memory of the stage 2 plan to about 14 MB */
+    private static final long MAX_B2 = 1000000000L;
+    /** the giant step 2*3*5*7*11 */
+    private static final int D = 2310;
+    /** BABY_INDEX[j] is the index of the odd j <= D/2 coprime to D in the baby steps, -1 if j is not a baby step */
+    private static final int[] BABY_INDEX = new int[D / 2 + 1];
+    private static final int BABY_STEPS;
+    private static final int MASK_WORDS;
+
+    static {
+        int count = 0;
+        for (int j = 0; j <= D / 2; j++) {
+            boolean coprime = j % 2 != 0 && j % 3 != 0 && j % 5 != 0 && j % 7 != 0 && j % 11 != 0;
+            BABY_INDEX[j] = coprime ? count++ : -1;
+        }
+        BABY_STEPS = count;
+        MASK_WORDS = (count + 63) >>> 6;
+    }
+
+    private final ForkJoinPool pool;
+    /** the plan of the last B1, reused by the curves and cofactors of the same level */
+    private volatile Stage2Plan lastPlan;
+
+    private EllipticCurveFactorization(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    @Override
+    public List<BigInteger> factorize(final BigInteger number) {
+        return BigFactorSplitter.factorize(number, this::findDivisor);
+    }
+
+    /**
+     * runs ECM level by level until a curve finds a factor
+     *
+     * @param n odd composite number with at least 64 bits, no perfect power
+     * @return a non trivial factor of n
+     */
+    BigInteger findDivisor(BigInteger n) {
+        BigInteger divisor = null;
+        long b1 = LEVEL_B1[0];
+        for (int level = 0; divisor == null; level++) {
+            b1 = level < LEVEL_B1.length ? LEVEL_B1[level] : Math.min(2 * b1, Integer.MAX_VALUE / 2);
+            divisor = findFactor(n, b1, LEVEL_CURVES[Math.min(level, LEVEL_CURVES.length - 1)]);
+        }
+        return divisor;
+    }
+
+    /**
+     * runs ECM with the given number of curves
+     *
+     * @param n odd number to split, no prime and no perfect power
+     * @param b1 stage 1 bound, stage 2 covers the primes up to B2_FACTOR*b1
+     * @param curves number of curves
+     * @return a non trivial factor of n or null if no curve found one
+     * @throws IllegalArgumentException if n is even or b1 is not in [1155, 2^30]
+     */
+    public BigInteger findFactor(BigInteger n, long b1, int curves) {
+        if(!n.testBit(0)) throw new IllegalArgumentException("n must be odd");
+        if(b1 < D / 2 || b1 > 1 << 30) throw new IllegalArgumentException("b1 must be in [" + D / 2 + ",2^30]");
+        BigMontgomeryContext context = BigMontgomeryContext.getInstance(n);
+        PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence((int) b1);
+        Stage2Plan plan = lastPlan;
+        if(plan == null || plan.b1 != b1) {
+            plan = new Stage2Plan(b1, Math.max(b1, Math.min(MAX_B2, B2_FACTOR * b1)));
+            lastPlan = plan;
+        }
+        Stage2Plan stage2 = plan;
+        if(pool == null || curves < 2) {
+            for (int curve = 0; curve < curves; curve++) {
+                BigInteger factor = runCurve(context, primes, stage2);
+                if(factor != null) return factor;
+            }
+            return null;
+        }
+        int tasks = Math.min(curves, pool.getParallelism());
+        AtomicInteger remainingCurves = new AtomicInteger(curves);
+        // returns with the first factor, the other tasks stop after their current curve
+        return WitnessRounds.firstResult(tasks, pool, (task, done) -> {
+            while(!done.getAsBoolean() && remainingCurves.getAndDecrement() > 0) {
+                BigInteger factor = runCurve(context, primes, stage2);
+                if(factor != null) return factor;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * runs stage 1 and stage 2 on a random curve
+     *
+     * @return a non trivial factor of the modulus or null
+     */
+    private static BigInteger runCurve(BigMontgomeryContext context, PrimeSequence primes, Stage2Plan plan) {
+        BigInteger n = context.getModulus();
+        // suyama: u = sigma^2-5, v = 4*sigma, x0 = u^3, z0 = v^3, (A+2)/4 = (v-u)^3*(3u+v)/(16*u^3*v)
+        BigInteger sigma = BigInteger.valueOf(ThreadLocalRandom.current().nextLong(6, Integer.MAX_VALUE));
+        BigInteger u = sigma.multiply(sigma).subtract(BigInteger.valueOf(5)).mod(n);
+        BigInteger v = sigma.shiftLeft(2).mod(n);
+        BigInteger u3 = u.pow(3).mod(n);
+        BigInteger denominator = u3.multiply(v).shiftLeft(4).mod(n);
+        BigInteger g = denominator.gcd(n);
+        if(!g.equals(BigInteger.ONE)) return g.equals(n) ? null : g;
+        BigInteger a24 = v.subtract(u).pow(3).multiply(u.multiply(BigInteger.valueOf(3)).add(v))
+                .multiply(denominator.modInverse(n)).mod(n);
+        Curve curve = new Curve(context, context.toMontgomery(a24));
+        int[] x = context.toMontgomery(u3);
+        int[] z = context.toMontgomery(v.pow(3));
+
+        // stage 1
+        long b1 = plan.b1;
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.getInt(i);
+            if(prime > b1) break;
+            long power = prime;
+            while(power <= b1 / prime) {
+                power *= prime;
+            }
+            curve.multiply(x, z, power, x, z);
+        }
+        g = context.fromMontgomery(z).gcd(n);
+        if(!g.equals(BigInteger.ONE)) return g.equals(n) ? null : g;
+
+        // stage 2
+        int[][] babyX = new int[BABY_STEPS][];
+        int[][] babyZ = new int[BABY_STEPS][];
+        int[] previousX = x.clone();
+        int[] previousZ = z.clone();
+        int[] twoX = context.newValue();
+        int[] twoZ = context.newValue();
+        curve.doubling(x, z, twoX, twoZ);
+        int[] currentX = context.newValue();
+        int[] currentZ = context.newValue();
+        curve.add(twoX, twoZ, x, z, x, z, currentX, currentZ);
+        babyX[BABY_INDEX[1]] = x;
+        babyZ[BABY_INDEX[1]] = z;
+        // [j]Q for odd j with [j+2]Q = [j]Q + [2]Q and difference [j-2]Q
+        for (int j = 3; j <= D / 2; j += 2) {
+            if(BABY_INDEX[j] >= 0) {
+                babyX[BABY_INDEX[j]] = currentX.clone();
+                babyZ[BABY_INDEX[j]] = currentZ.clone();
+            }
+            int[] nextX = context.newValue();
+            int[] nextZ = context.newValue();
+            curve.add(currentX, currentZ, twoX, twoZ, previousX, previousZ, nextX, nextZ);
+            previousX = currentX;
+            previousZ = currentZ;
+            currentX = nextX;
+            currentZ = nextZ;
+        }
+        // normalize the baby steps to Z = 1 with one inversion for all of them
+        int[][] prefix = new int[BABY_STEPS][];
+        prefix[0] = babyZ[0];
+        for (int i = 1; i < BABY_STEPS; i++) {
+            prefix[i] = context.newValue();
+            context.multiply(prefix[i - 1], babyZ[i], prefix[i]);
+        }
+        BigInteger product = context.fromMontgomery(prefix[BABY_STEPS - 1]);
+        g = product.gcd(n);
+        if(!g.equals(BigInteger.ONE)) return g.equals(n) ? null : g;
+        int[] inverse = context.toMontgomery(product.modInverse(n));
+        int[] zInverse = context.newValue();
+        for (int i = BABY_STEPS - 1; i >= 0; i--) {
+            if(i > 0) {
+                context.multiply(inverse, prefix[i - 1], zInverse);
+                context.multiply(inverse, babyZ[i], inverse);
+            }
+            else {
+                System.arraycopy(inverse, 0, zInverse, 0, zInverse.length);
+            }
+            int[] normalized = context.newValue();
+            context.multiply(babyX[i], zInverse, normalized);
+            babyX[i] = normalized;
+        }
+        int[] giantX = context.newValue();
+        int[] giantZ = context.newValue();
+        curve.multiply(x, z, D, giantX, giantZ);
+        int[] aX = context.newValue();
+        int[] aZ = context.newValue();
+        int[] bX = context.newValue();
+        int[] bZ = context.newValue();
+        int[] cX = context.newValue();
+        int[] cZ = context.newValue();
+        curve.multiply(x, z, plan.mMin * D, aX, aZ);
+        curve.multiply(x, z, (plan.mMin + 1) * D, bX, bZ);
+        int[] accumulator = context.getOne();
+        int[] difference = context.newValue();
+        for (int m = 0; m < plan.giantSteps; m++) {
+            for (int word = 0; word < MASK_WORDS; word++) {
+                long bits = plan.masks[m * MASK_WORDS + word];
+                while(bits != 0) {
+                    int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    // X_m - x_j*Z_m = 0 mod p if x([mD]Q) = x([j]Q) mod p
+                    context.multiply(babyX[index], aZ, difference);
+                    context.subtract(aX, difference, difference);
+                    context.multiply(accumulator, difference, accumulator);
+                }
+            }
+            // [(m+2)D]Q = [(m+1)D]Q + [D]Q with difference [mD]Q
+            curve.add(bX, bZ, giantX, giantZ, aX, aZ, cX, cZ);
+            int[] t = aX;
+            aX = bX;
+            bX = cX;
+            cX = t;
+            t = aZ;
+            aZ = bZ;
+            bZ = cZ;
+            cZ = t;
+        }
+        g = context.fromMontgomery(accumulator).gcd(n);
+        return g.equals(BigInteger.ONE) || g.equals(n) ? null : g;
+    }
+
+    /**
+     * x only arithmetic on one Montgomery curve, the scratch arrays make an instance single threaded
+     */
+    private static final class Curve {
+        private final BigMontgomeryContext context;
+        /** (A+2)/4 in montgomery form */
+        private final int[] a24;
+        private final int[] t1;
+        private final int[] t2;
+        private final int[] t3;
+        private final int[] x0;
+        private final int[] z0;
+        private final int[] x1;
+        private final int[] z1;
+
+        private Curve(BigMontgomeryContext context, int[] a24) {
+            this.context = context;
+            this.a24 = a24;
+            this.t1 = context.newValue();
+            this.t2 = context.newValue();
+            this.t3 = context.newValue();
+            this.x0 = context.newValue();
+            this.z0 = context.newValue();
+            this.x1 = context.newValue();
+            this.z1 = context.newValue();
+        }
+
+        /**
+         * (rx:rz) = 2*(px:pz), r may be p
+         */
+        private void doubling(int[] px, int[] pz, int[] rx, int[] rz) {
+            context.add(px, pz, t1);
+            context.square(t1, t1);
+            context.subtract(px, pz, t2);
+            context.square(t2, t2);
+            context.multiply(t1, t2, rx);
+            context.subtract(t1, t2, t3);
+            context.multiply(a24, t3, t1);
+            context.add(t1, t2, t1);
+            context.multiply(t3, t1, rz);
+        }
+
+        /**
+         * (rx:rz) = (px:pz)+(qx:qz) with (dx:dz) = (px:pz)-(qx:qz), r may be p or q but not d
+         */
+        private void add(int[] px, int[] pz, int[] qx, int[] qz, int[] dx, int[] dz, int[] rx, int[] rz) {
+            context.subtract(px, pz, t1);
+            context.add(qx, qz, t2);
+            context.multiply(t1, t2, t1);
+            context.add(px, pz, t2);
+            context.subtract(qx, qz, t3);
+            context.multiply(t2, t3, t2);
+            context.add(t1, t2, t3);
+            context.subtract(t1, t2, t1);
+            context.square(t3, t3);
+            context.square(t1, t1);
+            context.multiply(dz, t3, rx);
+            context.multiply(dx, t1, rz);
+        }
+
+        /**
+         * (rx:rz) = k*(px:pz) by the montgomery ladder, r may be p
+         */
+        private void multiply(int[] px, int[] pz, long k, int[] rx, int[] rz) {
+            int[] x = px.clone();
+            int[] z = pz.clone();
+            System.arraycopy(x, 0, x0, 0, x.length);
+            System.arraycopy(z, 0, z0, 0, z.length);
+            doubling(x, z, x1, z1);
+            for (int bit = 62 - Long.numberOfLeadingZeros(k); bit >= 0; bit--) {
+                if(((k >>> bit) & 1) != 0) {
+                    add(x1, z1, x0, z0, x, z, x0, z0);
+                    doubling(x1, z1, x1, z1);
+                }
+                else {
+                    add(x0, z0, x1, z1, x, z, x1, z1);
+                    doubling(x0, z0, x0, z0);
+                }
+            }
+            System.arraycopy(x0, 0, rx, 0, x.length);
+            System.arraycopy(z0, 0, rz, 0, z.length);
+        }
+    }
+
+    /**
+     * which baby steps j are combined with which giant steps m*D, shared by all curves with the same bounds
+     */
+    private static final class Stage2Plan {
+        private final long b1;
+        /** first giant step */
+        private final long mMin;
+        private final int giantSteps;
+        /** MASK_WORDS words per giant step, bit BABY_INDEX[j] is set if m*D+j or m*D-j is a prime in (b1,b2] */
+        private final long[] masks;
+
+        private Stage2Plan(long b1, long b2) {
+            this.b1 = b1;
+            this.mMin = (b1 + 1 + D / 2) / D;
+            long mMax = (b2 + D / 2) / D;
+            this.giantSteps = (int) (mMax - mMin + 1);
+            this.masks = new long[giantSteps * MASK_WORDS];
+            WheelSieveOfEratosthenes.getInstance().sieve(b1 + 1, b2, q -> {
+                long m = (q + D / 2) / D;
+                int index = BABY_INDEX[(int) Math.abs(q - m * D)];
+                int position = (int) (m - mMin) * MASK_WORDS + (index >>> 6);
+                masks[position] |= 1L << index;
+            });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EllipticCurveFactorization{" +
+                "pool=" + pool +
+                '}';
+    }
+
+    /**
+     *
+     * @return EllipticCurveFactorization running the curves in the calling thread
+     */
+    public static EllipticCurveFactorization getInstance() {
+        return new EllipticCurveFactorization(null);
+    }
+
+    /**
+     *
+     * @param pool pool whose workers run the curves
+     * @return EllipticCurveFactorization running the curves in parallel
+     */
+    public static EllipticCurveFactorization getInstance(ForkJoinPool pool) {
+        return new EllipticCurveFactorization(pool);
+    }
+}
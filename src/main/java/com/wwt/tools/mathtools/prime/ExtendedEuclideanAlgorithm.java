@@ -0,0 +1,85 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+/**
+ * Extended euclidean algorithm, beside the greatest common divisor it provides modular inverses
+ *
+ * @author benw@wwt
+ */
+public final class ExtendedEuclideanAlgorithm implements GreatestCommonDivisorAlgorithm {
+
+    private static class ExtendedEuclideanAlgorithmHolder {
+        private static final ExtendedEuclideanAlgorithm INSTANCE = new ExtendedEuclideanAlgorithm();
+    }
+
+    /**
+     * not instantiatable -> singleton because object is stateless
+     */
+    private ExtendedEuclideanAlgorithm() {}
+
+    @Override
+    public long getGreatestCommonDivisor(long a, long b) {
+        a = Math.abs(a);
+        b = Math.abs(b);
+        while(b!=0) {
+            long h = a % b;
+            a = b;
+            b = h;
+        }
+        return a;
+    }
+
+    /**
+     * computes the inverse of a modulo mod by tracking the bezout coefficient of a
+     *
+     * @param a the number to invert
+     * @param mod the modulus
+     * @return x in [0,mod) with a*x = 1 mod mod
+     * @throws ArithmeticException if mod is not positive or a and mod are not coprime
+     */
+    public long getInverseModulo(long a, long mod) {
+        if(mod <= 0) throw new ArithmeticException("modulus not positive");
+        long r0 = mod;
+        long r1 = Math.floorMod(a, mod);
+        long t0 = 0;
+        long t1 = 1;
+        while(r1 != 0) {
+            long q = r0 / r1;
+            long h = r0 - q * r1;
+            r0 = r1;
+            r1 = h;
+            h = t0 - q * t1;
+            t0 = t1;
+            t1 = h;
+        }
+        if(r0 != 1) throw new ArithmeticException(a + " is not invertible modulo " + mod);
+        return t0 < 0 ? t0 + mod : t0;
+    }
+
+    @Override
+    public String toString() {
+        return "ExtendedEuclideanAlgorithm{}";
+    }
+
+    /**
+     * Singleton instance
+     *
+     * @return the one and only ExtendedEuclideanAlgorithm instance
+     */
+    public static ExtendedEuclideanAlgorithm getInstance() {
+        return ExtendedEuclideanAlgorithmHolder.INSTANCE;
+    }
+}
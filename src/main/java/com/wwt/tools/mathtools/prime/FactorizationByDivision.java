@@ -14,20 +14,23 @@
  */
 package com.wwt.tools.mathtools.prime;
 
+import com.wwt.tools.mathtools.MathTool;
+
 import java.util.LinkedList;
 import java.util.List;
 
 /**
- * Generates a prime sequence and divides the given number by the primes until all prime factors are found
- * Im not really proud of the implementation because of too many casts. The reason is that the current PrimeSequence generator allows
- * only ints. But nevertheless wanted to add it because i know that some students around the globe have to deal with the algorithm.
- * And for understanding it is good enough (it is anyhow not an algorithm to use in real world).
+ * Trial division by the primes up to the square root of the number. The primes are taken from the given generator,
+ * the shared PrimeCache by default, so that they are sieved only once for many numbers. Primes beyond TABLE_BOUND are
+ * not requested from the generator but iterated lazily, so the whole long range is accepted, although numbers
+ * with two prime factors > 10^8 take long.
  *
  * @author benw@wwt
- * @todo extend long,BigInteger when the rest of prime is done
  */
 public final class FactorizationByDivision implements FactorizationAlgorithm {
 
+    /** largest prime requested from the generator, 2^24 needs 1077871 primes */
+    private static final int TABLE_BOUND = 1 << 24;
 
     private final PrimeSequenceGenerator primeSequenceGenerator;
 
@@ -37,35 +40,45 @@ public final class FactorizationByDivision implements FactorizationAlgorithm {
     /**
      *
      * @param number the number which should be split into the prime factor representation
-     * @return
-     * @throws IllegalArgumentException if number is > Integer.MAX_VALUE because the currently implemented prime sequence does not allow to do more
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
      */
     @Override
     public List<Long> factorize(final long number) {
-        if(number >= (long) Integer.MAX_VALUE) throw new IllegalArgumentException("Number too big for current implementation");
+        if(number < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
         long toSplit = number;
         List<Long> returnValue = new LinkedList<>();
-        List<Integer> primes = primeSequenceGenerator.getPrimeSequence((int)number);
-        long q,r;
-        int i = 0;
-        while(toSplit!=1) {
-            if(i == primes.size()) {
-                returnValue.add(toSplit);
-                break;
-            }
-            q = toSplit / primes.get(i);
-            r = toSplit % primes.get(i);
-            if(r==0) {
-                returnValue.add(new Long(primes.get(i)));
-                toSplit = q;
+        long root = MathTool.isqrt(toSplit);
+        PrimeSequence primes = primeSequenceGenerator.getPrimeSequence((int) Math.max(2, Math.min(TABLE_BOUND, root)));
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.getInt(i);
+            if(prime > toSplit / prime) break;
+            while(toSplit % prime == 0) {
+                returnValue.add(prime);
+                toSplit /= prime;
             }
-            else {
-                i++;
+        }
+        if(root > TABLE_BOUND) {
+            PrimeIterator largePrimes = PrimeIterator.getInstance(TABLE_BOUND + 1);
+            long prime = largePrimes.nextLong();
+            while(prime <= toSplit / prime) {
+                while(toSplit % prime == 0) {
+                    returnValue.add(prime);
+                    toSplit /= prime;
+                }
+                prime = largePrimes.nextLong();
             }
         }
+        if(toSplit != 1) returnValue.add(toSplit);
         return returnValue;
     }
 
+    @Override
+    public String toString() {
+        return "FactorizationByDivision{" +
+                "primeSequenceGenerator=" + primeSequenceGenerator +
+                '}';
+    }
 
     /**
      * For future caching of objects if needed
@@ -76,4 +89,12 @@ public final class FactorizationByDivision implements FactorizationAlgorithm {
     public static FactorizationByDivision getInstance(PrimeSequenceGenerator primeSequenceGenerator) {
         return new FactorizationByDivision(primeSequenceGenerator);
     }
+
+    /**
+     *
+     * @return FactorizationByDivision using the shared PrimeCache
+     */
+    public static FactorizationByDivision getInstance() {
+        return new FactorizationByDivision(PrimeCache.getInstance());
+    }
 }
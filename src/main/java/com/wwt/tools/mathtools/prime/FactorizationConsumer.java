@@ -0,0 +1,31 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+/**
+ * callback receiving the prime factorizations of the bulk factorizations, one call per number
+ * @author benw@wwt
+ */
+@FunctionalInterface
+public interface FactorizationConsumer {
+
+    /**
+     *
+     * @param number the factorized number
+     * @param factors the prime factors in ascending order in the first count elements, the array is reused after the call
+     * @param count number of prime factors, 0 for 1
+     */
+    void accept(long number, long[] factors, int count);
+}
@@ -46,6 +46,7 @@ public class FermatFactorization implements FactorizationAlgorithm {
             returnValue.add(2L);
         }
         if(toSplit == 2)  returnValue.add(2L);
+        else if(toSplit > 2 && isFactorPrime(toSplit)) returnValue.add(toSplit);
         else {
             returnValue.addAll(fermatFactor(toSplit));
         }
@@ -54,13 +55,14 @@ public class FermatFactorization implements FactorizationAlgorithm {
 
     private List<Long> fermatFactor(long N) {
         List<Long> returnValue = new LinkedList<>();
-        long a = (long) Math.ceil(Math.sqrt(N));
+        long a = MathTool.isqrt(N);
+        if (a * a < N) a++;
         long b2 = a * a - N;
         while (!MathTool.isSquare(b2)) {
+            b2 += 2 * a + 1;
             a++;
-            b2 = a * a - N;
         }
-        long r1 = a - (long)Math.sqrt(b2);
+        long r1 = a - MathTool.isqrt(b2);
         long r2 = N / r1;
         if(r1 == 1) {
             returnValue.add(r2);
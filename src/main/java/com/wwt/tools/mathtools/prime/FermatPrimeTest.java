@@ -14,12 +14,15 @@
  */
 package com.wwt.tools.mathtools.prime;
 
-import com.wwt.tools.mathtools.MathTool;
+import com.wwt.tools.mathtools.MontgomeryContext;
 
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Implementation of Fermat prime test, GCD calculator can be provided
+ * Implementation of Fermat prime test, GCD calculator can be provided.
+ * Numbers up to the bound of an optional PrimeTable are looked up instead, the rounds for BigIntegers can run in parallel
  *
  * @author benw@wwt
  */
@@ -27,28 +30,54 @@ public final class FermatPrimeTest implements ProbabilisticPrimeTest {
 
     private final GreatestCommonDivisorAlgorithm gcdCalculator;
 
-    private FermatPrimeTest(GreatestCommonDivisorAlgorithm gcdCalculator) {
+    private final PrimeTable primeTable;
+
+    private final ForkJoinPool pool;
+
+    private FermatPrimeTest(GreatestCommonDivisorAlgorithm gcdCalculator, PrimeTable primeTable, ForkJoinPool pool) {
         this.gcdCalculator = gcdCalculator;
+        this.primeTable = primeTable;
+        this.pool = pool;
     }
 
     @Override
     public boolean isPrime(long numberToTest, int iterations) {
+        if(primeTable != null && numberToTest <= primeTable.getBound()) return primeTable.isPrime(numberToTest);
         if(numberToTest == 2 || numberToTest == 3 || numberToTest == 5) return true;
-        if(numberToTest == 0 || numberToTest == 1 || numberToTest % 2 == 0) return false;
+        if(numberToTest < 2 || numberToTest % 2 == 0) return false;
 
+        MontgomeryContext context = MontgomeryContext.getInstance(numberToTest);
         for(int i=0;i<iterations;i++) {
-            long a = 2 + (Math.abs(ThreadLocalRandom.current().nextLong()) % (numberToTest-3));
+            long a = ThreadLocalRandom.current().nextLong(2, numberToTest - 1);
             if(gcdCalculator.getGreatestCommonDivisor(a,numberToTest)!= 1) return false;
-            if(MathTool.exponentiationModulo(a,numberToTest-1,numberToTest) != 1) return false;
+            if(context.pow(context.toMontgomery(a),numberToTest-1) != context.getOne()) return false;
         }
         return true;
     }
 
+    /**
+     * numbers beyond 63 bits use BigInteger.gcd and BigInteger.modPow
+     */
+    @Override
+    public boolean isPrime(BigInteger numberToTest, int iterations) {
+        if(numberToTest.bitLength() < 64) return isPrime(numberToTest.longValue(), iterations);
+        if(numberToTest.signum() < 0 || !numberToTest.testBit(0)) return false;
+
+        BigInteger numberMinusOne = numberToTest.subtract(BigInteger.ONE);
+        return WitnessRounds.allPass(iterations, pool, () -> {
+            BigInteger a = WitnessRounds.randomWitness(numberToTest);
+            if(!a.gcd(numberToTest).equals(BigInteger.ONE)) return false;
+            return a.modPow(numberMinusOne, numberToTest).equals(BigInteger.ONE);
+        });
+    }
+
 
     @Override
     public String toString() {
         return "FermatPrimeTest{" +
                 "gcdCalculator=" + gcdCalculator +
+                ", primeTable=" + primeTable +
+                ", pool=" + pool +
                 '}';
     }
 
@@ -59,6 +88,28 @@ public final class FermatPrimeTest implements ProbabilisticPrimeTest {
      * @return
      */
     public static ProbabilisticPrimeTest getInstance(GreatestCommonDivisorAlgorithm gcdCalculator) {
-        return new FermatPrimeTest(gcdCalculator);
+        return new FermatPrimeTest(gcdCalculator, null, null);
+    }
+
+    /**
+     * Numbers up to the bound of the table are answered exactly by lookup
+     *
+     * @param gcdCalculator
+     * @param primeTable table consulted as fast path
+     * @return
+     */
+    public static ProbabilisticPrimeTest getInstance(GreatestCommonDivisorAlgorithm gcdCalculator, PrimeTable primeTable) {
+        return new FermatPrimeTest(gcdCalculator, primeTable, null);
+    }
+
+    /**
+     * The rounds for numbers beyond 63 bits run in parallel, the test returns with the first witness found
+     *
+     * @param gcdCalculator
+     * @param pool pool running the rounds
+     * @return
+     */
+    public static ProbabilisticPrimeTest getInstance(GreatestCommonDivisorAlgorithm gcdCalculator, ForkJoinPool pool) {
+        return new FermatPrimeTest(gcdCalculator, null, pool);
     }
 }
@@ -0,0 +1,172 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Factorization of arbitrary longs by a pipeline of the algorithms in this package: trial division by the primes below
+ * trialDivisionBound, a perfect power check, the Baillie-PSW test which is exact for longs and for the remaining
+ * composites a divisor search chosen by their size. Cofactors up to squareFormsBits get a short rho run of rhoSteps
+ * iterations, which finds the factors up to about rhoSteps^2, and then SQUFOF whose O(n^(1/4)) steps do not depend on
+ * the balance of the factors. Bigger cofactors go to Pollard's rho without bound, which is faster than SQUFOF there.
+ * ECM is the last resort if all SQUFOF multipliers fail, below 64 bits it is never faster than rho. Its B1 doubles up
+ * to 2^30, beyond that unbounded rho takes over. Both halves of a split are factorized recursively by the same
+ * pipeline.
+ *
+ * @author benw@wwt
+ */
+public final class HybridFactorization implements FactorizationAlgorithm {
+
+    private static final int DEFAULT_TRIAL_DIVISION_BOUND = 1 << 10;
+    private static final int DEFAULT_RHO_STEPS = 1 << 10;
+    private static final int DEFAULT_SQUARE_FORMS_BITS = 44;
+    /** SQUFOF multiplies n by products of primes up to 11 which must not divide n */
+    private static final int MIN_TRIAL_DIVISION_BOUND = 16;
+    private static final int MAX_TRIAL_DIVISION_BOUND = 1 << 20;
+    private static final int ELLIPTIC_CURVE_B1 = 2000;
+    private static final int ELLIPTIC_CURVES = 100;
+    /** the largest stage 1 bound EllipticCurveFactorization accepts */
+    private static final int MAX_ELLIPTIC_CURVE_B1 = 1 << 30;
+
+    private static class HybridFactorizationHolder {
+        private static final HybridFactorization INSTANCE = new HybridFactorization(DEFAULT_TRIAL_DIVISION_BOUND,
+                DEFAULT_RHO_STEPS, DEFAULT_SQUARE_FORMS_BITS);
+    }
+
+    private final int trialDivisionBound;
+    private final int rhoSteps;
+    private final int squareFormsBits;
+    private final PrimeTest primeTest = BailliePSWTest.getInstance();
+    private final PollardRhoFactorization rho = PollardRhoFactorization.getInstance(primeTest);
+    private final SquareFormsFactorization squareForms = SquareFormsFactorization.getInstance(primeTest);
+    /** one instance, so the stage 2 plan of a B1 is reused by the next cofactors */
+    private final EllipticCurveFactorization ellipticCurves = EllipticCurveFactorization.getInstance();
+
+    private HybridFactorization(int trialDivisionBound, int rhoSteps, int squareFormsBits) {
+        this.trialDivisionBound = trialDivisionBound;
+        this.rhoSteps = rhoSteps;
+        this.squareFormsBits = squareFormsBits;
+    }
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    @Override
+    public List<Long> factorize(final long number) {
+        if(number < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
+        List<Long> returnValue = new ArrayList<>();
+        long toSplit = number;
+        PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence(trialDivisionBound);
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.getInt(i);
+            if(prime * prime > toSplit) break;
+            while(toSplit % prime == 0) {
+                returnValue.add(prime);
+                toSplit /= prime;
+            }
+        }
+        split(toSplit, returnValue);
+        Collections.sort(returnValue);
+        return returnValue;
+    }
+
+    /**
+     * adds the prime factors of the number n without factors below trialDivisionBound
+     */
+    private void split(long n, List<Long> factors) {
+        if(n == 1) return;
+        if(n < (long) trialDivisionBound * trialDivisionBound) {
+            factors.add(n);
+            return;
+        }
+        int exponent = MathTool.perfectPowerExponent(n);
+        if(exponent > 1) {
+            List<Long> rootFactors = new ArrayList<>();
+            split(MathTool.iroot(n, exponent), rootFactors);
+            for (int i = 0; i < exponent; i++) {
+                factors.addAll(rootFactors);
+            }
+            return;
+        }
+        if(primeTest.isPrime(n)) {
+            factors.add(n);
+            return;
+        }
+        long divisor = findDivisor(n);
+        split(divisor, factors);
+        split(n / divisor, factors);
+    }
+
+    /**
+     * @param n odd composite number which is no perfect power and has no factors below trialDivisionBound
+     * @return a non trivial divisor of n
+     */
+    private long findDivisor(long n) {
+        if(64 - Long.numberOfLeadingZeros(n) > squareFormsBits) return rho.findDivisor(n);
+        long divisor = rhoSteps == 0 ? 0 : rho.findDivisor(n, rhoSteps);
+        if(divisor != 0) return divisor;
+        divisor = squareForms.findDivisor(n);
+        if(divisor != 0) return divisor;
+        BigInteger bigN = BigInteger.valueOf(n);
+        for (long b1 = ELLIPTIC_CURVE_B1; b1 <= MAX_ELLIPTIC_CURVE_B1; b1 *= 2) {
+            BigInteger factor = ellipticCurves.findFactor(bigN, b1, ELLIPTIC_CURVES);
+            if(factor != null) return factor.longValue();
+        }
+        // not reached in practice, unbounded rho always splits a composite long
+        return rho.findDivisor(n);
+    }
+
+    @Override
+    public String toString() {
+        return "HybridFactorization{" +
+                "trialDivisionBound=" + trialDivisionBound +
+                ", rhoSteps=" + rhoSteps +
+                ", squareFormsBits=" + squareFormsBits +
+                '}';
+    }
+
+    /**
+     * Singleton instance with the default thresholds
+     *
+     * @return HybridFactorization with trial division up to 2^10, 2^10 rho steps and SQUFOF up to 44 bits
+     */
+    public static HybridFactorization getInstance() { return HybridFactorizationHolder.INSTANCE; }
+
+    /**
+     *
+     * @param trialDivisionBound primes below this bound are removed by trial division, in [16,2^20]
+     * @param rhoSteps iterations of the rho run before SQUFOF, 0 skips it
+     * @param squareFormsBits cofactors up to this bit length go to SQUFOF, bigger ones to rho, 0 disables SQUFOF
+     * @return HybridFactorization with the given thresholds
+     * @throws IllegalArgumentException if a threshold is out of range
+     */
+    public static HybridFactorization getInstance(int trialDivisionBound, int rhoSteps, int squareFormsBits) {
+        if(trialDivisionBound < MIN_TRIAL_DIVISION_BOUND || trialDivisionBound > MAX_TRIAL_DIVISION_BOUND) {
+            throw new IllegalArgumentException("trial division bound must be in [" + MIN_TRIAL_DIVISION_BOUND + "," + MAX_TRIAL_DIVISION_BOUND + "]");
+        }
+        if(rhoSteps < 0) throw new IllegalArgumentException("rho steps must not be negative");
+        if(squareFormsBits < 0 || squareFormsBits > 64) throw new IllegalArgumentException("square forms bits must be in [0,64]");
+        return new HybridFactorization(trialDivisionBound, rhoSteps, squareFormsBits);
+    }
+}
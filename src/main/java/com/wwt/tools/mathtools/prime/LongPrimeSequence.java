@@ -0,0 +1,125 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable sequence of ascending long primes backed by a long array, the counterpart of PrimeSequence for
+ * generators working on long ranges.
+ *
+ * @author benw@wwt
+ */
+public final class LongPrimeSequence extends AbstractList<Long> implements RandomAccess {
+
+    private final long[] primes;
+    private final int size;
+
+    private LongPrimeSequence(long[] primes, int size) {
+        this.primes = primes;
+        this.size = size;
+    }
+
+    /**
+     * @param index position in the sequence
+     * @return the prime at index without boxing
+     * @throws IndexOutOfBoundsException if index is not in [0,size)
+     */
+    public long getLong(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return primes[index];
+    }
+
+    @Override
+    public Long get(int index) {
+        return getLong(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * binary search, the sequence is sorted
+     */
+    @Override
+    public int indexOf(Object o) {
+        if(!(o instanceof Long)) return -1;
+        int index = Arrays.binarySearch(primes, 0, size, (Long) o);
+        return index < 0 ? -1 : index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * @return the primes as LongStream
+     */
+    public LongStream longStream() {
+        return Arrays.stream(primes, 0, size);
+    }
+
+    /**
+     * @return a copy of the primes
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(primes, size);
+    }
+
+    /**
+     * copies the primes into a caller supplied buffer, at most until the end of the buffer
+     *
+     * @param destination the buffer
+     * @param destinationOffset first position to write to
+     * @return the number of primes written
+     */
+    public int copyInto(long[] destination, int destinationOffset) {
+        int length = Math.min(size, destination.length - destinationOffset);
+        System.arraycopy(primes, 0, destination, destinationOffset, length);
+        return length;
+    }
+
+    /**
+     * growable long buffer used by the generators which do not know the number of primes in advance
+     */
+    static final class Builder {
+        private long[] primes;
+        private int size;
+
+        Builder(int initialCapacity) {
+            primes = new long[Math.max(16, initialCapacity)];
+        }
+
+        void add(long prime) {
+            if(size == primes.length) primes = Arrays.copyOf(primes, primes.length + (primes.length >> 1));
+            primes[size++] = prime;
+        }
+
+        LongPrimeSequence build() {
+            return new LongPrimeSequence(primes, size);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read only prime table in a memory mapped file. The table is written once with write (or the main method) and then
+ * opened by any number of processes, which share the pages of the file through the page cache. Opening the table only
+ * maps the file, nothing is sieved or copied onto the heap.
+ * <p>
+ * File layout: a 64 byte header, the data section and the block index. The primes are grouped in blocks of
+ * BLOCK_SIZE primes, the index stores the first prime of every block and the file position of its remaining primes.
+ * These are stored as gaps to the previous prime, halved and varint encoded (7 bits per byte, high bit set if another
+ * byte follows), so primes below 10^12 need about one byte each. The gap 1 between 2 and 3 is encoded as 0.
+ * Files are limited to 2 GB, which holds all primes up to about 5*10^10.
+ * <p>
+ * Instances are immutable and thread safe, the mapping is released when the table is garbage collected.
+ *
+ * @author benw@wwt
+ */
+public final class MappedPrimeTable implements PrimeSequenceGenerator {
+
+    private static final long MAGIC = 0x5052494D45544142L; // "PRIMETAB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    /** primes per block, nthPrime and pi decode at most BLOCK_SIZE - 1 gaps */
+    private static final int BLOCK_SIZE = 256;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path file;
+    /** the whole file, only accessed with absolute gets */
+    private final ByteBuffer data;
+    /** pairs of first prime and data position per block */
+    private final LongBuffer index;
+    private final int blockSize;
+    private final long blockCount;
+    private final long size;
+    private final long upperBound;
+
+    private MappedPrimeTable(Path file, ByteBuffer data) throws IOException {
+        this.file = file;
+        this.data = data;
+        if(data.capacity() < HEADER_BYTES || data.getLong(0) != MAGIC) throw new IOException(file + " is not a prime table");
+        if(data.getInt(8) != VERSION) throw new IOException("unsupported prime table version " + data.getInt(8));
+        this.blockSize = data.getInt(12);
+        this.size = data.getLong(16);
+        this.upperBound = data.getLong(24);
+        long indexOffset = data.getLong(32);
+        this.blockCount = data.getLong(40);
+        if(blockSize < 1 || indexOffset + 16 * blockCount != data.capacity() || (size + blockSize - 1) / blockSize != blockCount) {
+            throw new IOException(file + " is corrupt");
+        }
+        ByteBuffer indexBytes = data.duplicate();
+        indexBytes.position((int) indexOffset);
+        this.index = indexBytes.slice().asLongBuffer();
+    }
+
+    /**
+     * @return the number of primes in the table
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the upper bound the table was written for, all primes up to it are contained
+     */
+    public long getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     *
+     * @param n the position of the prime, starting with nthPrime(1) = 2
+     * @return the n-th prime
+     * @throws IllegalArgumentException if n is not in [1,size()]
+     */
+    public long nthPrime(long n) {
+        if(n < 1 || n > size) throw new IllegalArgumentException("the table contains " + size + " primes");
+        long block = (n - 1) / blockSize;
+        int steps = (int) ((n - 1) % blockSize);
+        long prime = firstPrime(block);
+        int position = dataPosition(block);
+        for (int i = 0; i < steps; i++) {
+            long gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                gap |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            prime += gap == 0 ? 1 : 2 * gap;
+        }
+        return prime;
+    }
+
+    /**
+     * prime counting function, binary search over the block index and a scan of at most one block
+     *
+     * @param x upper bound (inclusive)
+     * @return the number of primes <= x
+     * @throws IllegalArgumentException if x exceeds the upper bound of the table
+     */
+    public long pi(long x) {
+        if(x > upperBound) throw new IllegalArgumentException("the table only covers primes up to " + upperBound);
+        if(x < 2) return 0;
+        long block = lastBlockStartingAtOrBelow(x);
+        long count = block * blockSize + 1;
+        PrimeCursor cursor = new PrimeCursor(block);
+        cursor.nextLong();
+        while(cursor.hasNext() && cursor.index % blockSize != 0 && cursor.peek() <= x) {
+            cursor.nextLong();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param n number to test
+     * @return true if n is a prime
+     * @throws IllegalArgumentException if n exceeds the upper bound of the table
+     */
+    public boolean isPrime(long n) {
+        if(n > upperBound) throw new IllegalArgumentException("the table only covers primes up to " + upperBound);
+        return iterator(n, n).hasNext();
+    }
+
+    /**
+     * hands all primes in [lowerBound,upperBound] in ascending order to the consumer
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive), primes beyond the table are not reported
+     * @param consumer receives the primes
+     */
+    public void forEach(long lowerBound, long upperBound, LongConsumer consumer) {
+        PrimitiveIterator.OfLong primes = iterator(lowerBound, upperBound);
+        while(primes.hasNext()) {
+            consumer.accept(primes.nextLong());
+        }
+    }
+
+    /**
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive), primes beyond the table are not reported
+     * @return lazy iterator over all primes of the table in [lowerBound,upperBound]
+     */
+    public PrimitiveIterator.OfLong iterator(long lowerBound, long upperBound) {
+        if(size == 0 || lowerBound > upperBound) return new PrimeCursor(blockCount);
+        PrimeCursor cursor = new PrimeCursor(lastBlockStartingAtOrBelow(lowerBound));
+        while(cursor.hasNext() && cursor.peek() < lowerBound) {
+            cursor.nextLong();
+        }
+        cursor.last = upperBound;
+        return cursor;
+    }
+
+    /**
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive), primes beyond the table are not reported
+     * @return lazy stream of all primes of the table in [lowerBound,upperBound]
+     */
+    public LongStream stream(long lowerBound, long upperBound) {
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(iterator(lowerBound, upperBound),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive), primes beyond the table are not reported
+     * @return all primes of the table in [lowerBound,upperBound]
+     */
+    public LongPrimeSequence getPrimeSequence(long lowerBound, long upperBound) {
+        LongPrimeSequence.Builder primeNumbers = new LongPrimeSequence.Builder(1 << 10);
+        forEach(lowerBound, upperBound, primeNumbers::add);
+        return primeNumbers.build();
+    }
+
+    @Override
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
+        int[] primes = new int[(int) pi(upperBound)];
+        fillPrimeSequence(upperBound, primes);
+        return PrimeSequence.wrap(primes, primes.length);
+    }
+
+    @Override
+    public int fillPrimeSequence(int upperBound, int[] buffer) {
+        int count = (int) pi(upperBound);
+        PrimitiveIterator.OfLong primes = iterator(2, upperBound);
+        for (int i = 0; i < buffer.length && primes.hasNext(); i++) {
+            buffer[i] = (int) primes.nextLong();
+        }
+        return count;
+    }
+
+    private long firstPrime(long block) {
+        return index.get((int) (2 * block));
+    }
+
+    private int dataPosition(long block) {
+        return (int) index.get((int) (2 * block + 1));
+    }
+
+    /**
+     * @return the last block whose first prime is <= x, 0 if there is none
+     */
+    private long lastBlockStartingAtOrBelow(long x) {
+        long low = 0;
+        long high = blockCount - 1;
+        while(low < high) {
+            long middle = (low + high + 1) >>> 1;
+            if(firstPrime(middle) <= x) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * sequential decoder starting at the first prime of a block, crosses block boundaries via the index
+     */
+    private final class PrimeCursor implements PrimitiveIterator.OfLong {
+        /** index of the next prime */
+        private long index;
+        private int position;
+        private long prime;
+        private long last = Long.MAX_VALUE;
+
+        private PrimeCursor(long block) {
+            this.index = block * blockSize;
+        }
+
+        private long peek() {
+            if(index % blockSize == 0) {
+                long block = index / blockSize;
+                position = dataPosition(block);
+                return firstPrime(block);
+            }
+            long gap = 0;
+            int shift = 0;
+            int p = position;
+            byte b;
+            do {
+                b = data.get(p++);
+                gap |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            return prime + (gap == 0 ? 1 : 2 * gap);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < size && peek() <= last;
+        }
+
+        @Override
+        public long nextLong() {
+            if(!hasNext()) throw new NoSuchElementException();
+            if(index % blockSize == 0) {
+                prime = peek();
+            }
+            else {
+                long gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data.get(position++);
+                    gap |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while(b < 0);
+                prime += gap == 0 ? 1 : 2 * gap;
+            }
+            index++;
+            return prime;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPrimeTable{" +
+                "file=" + file +
+                ", size=" + size +
+                ", upperBound=" + upperBound +
+                '}';
+    }
+
+    /**
+     * maps an existing table file read only
+     *
+     * @param file table written by write
+     * @return the mapped table
+     * @throws IOException if the file cannot be read, is no prime table or is bigger than 2 GB
+     */
+    public static MappedPrimeTable open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) throw new IOException("prime tables bigger than 2 GB are not supported");
+            return new MappedPrimeTable(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * writes all primes up to upperBound into a table file. The primes are sieved segment by segment and streamed to
+     * the file, the heap only holds the block index. The table is written to a temporary file first and then moved
+     * into place, so processes which open the file never see a partially written table.
+     *
+     * @param file the table file, an existing file is replaced
+     * @param upperBound upper bound (inclusive) for the primes
+     * @throws IOException if the file cannot be written or would exceed 2 GB
+     */
+    public static void write(Path file, long upperBound) throws IOException {
+        if(upperBound > Long.MAX_VALUE - 30) throw new IllegalArgumentException("upper bound too big");
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean written = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                TableWriter writer = new TableWriter(channel);
+                try {
+                    WheelSieveOfEratosthenes.getInstance().sieve(2, upperBound, writer);
+                }
+                catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                writer.finish(upperBound);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+        }
+        finally {
+            if(!written) Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static final class TableWriter implements LongConsumer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private long position = HEADER_BYTES;
+        private long count;
+        private long previous;
+        private long[] index = new long[1 << 10];
+
+        private TableWriter(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_BYTES);
+        }
+
+        @Override
+        public void accept(long prime) {
+            if(buffer.remaining() < 10) flush();
+            if(count % BLOCK_SIZE == 0) {
+                int block = (int) (count / BLOCK_SIZE);
+                if(2 * block + 2 > index.length) index = Arrays.copyOf(index, index.length << 1);
+                index[2 * block] = prime;
+                index[2 * block + 1] = position + buffer.position();
+            }
+            else {
+                long gap = (prime - previous) >>> 1;
+                while(gap >= 0x80) {
+                    buffer.put((byte) (gap | 0x80));
+                    gap >>>= 7;
+                }
+                buffer.put((byte) gap);
+            }
+            previous = prime;
+            count++;
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                while(buffer.hasRemaining()) {
+                    position += channel.write(buffer);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+            if(position > Integer.MAX_VALUE) throw new UncheckedIOException(new IOException("prime table would exceed 2 GB"));
+        }
+
+        private void finish(long upperBound) throws IOException {
+            try {
+                long blockCount = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+                flush();
+                long indexOffset = position;
+                for (int i = 0; i < 2 * blockCount; i++) {
+                    if(buffer.remaining() < 8) flush();
+                    buffer.putLong(index[i]);
+                }
+                flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putLong(MAGIC).putInt(VERSION).putInt(BLOCK_SIZE).putLong(count).putLong(upperBound)
+                        .putLong(indexOffset).putLong(blockCount);
+                header.clear();
+                while(header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * command line tool to write a table file
+     *
+     * @param args the table file and the upper bound
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("usage: MappedPrimeTable <file> <upperBound>");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        Path file = Paths.get(args[0]);
+        write(file, Long.parseLong(args[1]));
+        MappedPrimeTable table = open(file);
+        System.out.println(table + " written in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
@@ -14,58 +14,200 @@
  */
 package com.wwt.tools.mathtools.prime;
 
-import com.wwt.tools.mathtools.MathTool;
+import com.wwt.tools.mathtools.MontgomeryContext;
 
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * Miller Rabin test with random witnesses, numbers up to the bound of an optional PrimeTable are looked up instead.
+ * isPrime(n) without iterations is deterministic: after trial division by the primes up to 47 it uses witness sets
+ * which are known to have no strong pseudoprime below the given limit, so at most 7 rounds are exact for all longs.
+ * Bigger numbers are tested with BigInteger.modPow, the rounds can run in parallel on a pool.
+ *
  * @author benw@wwt
  */
-public final class MillerRabinTest implements ProbabilisticPrimeTest {
+public final class MillerRabinTest implements ProbabilisticPrimeTest, PrimeTest {
+
+    private static final int[] SMALL_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47};
+    /** product of SMALL_PRIMES */
+    private static final BigInteger SMALL_PRIMORIAL = BigInteger.valueOf(614889782588491410L);
+    /** numbers below this bound without small prime factor are prime */
+    private static final long SMALL_PRIMES_LIMIT = 53 * 53;
+    /** the witness sets WITNESSES[i] are exact below WITNESS_LIMITS[i], the bases are unsigned */
+    private static final long[] WITNESS_LIMITS = {341531L, 1050535501L, 350269456337L, 55245642489451L,
+            7999252175582851L, 585226005592931977L, Long.MAX_VALUE};
+    private static final long[][] WITNESSES = {
+            {Long.parseUnsignedLong("9345883071009581737")},
+            {336781006125L, 9639812373923155L},
+            {4230279247111683200L, Long.parseUnsignedLong("14694767155120705706"),
+                    Long.parseUnsignedLong("16641139526367750375")},
+            {2, 141889084524735L, 1199124725622454117L, Long.parseUnsignedLong("11096072698276303650")},
+            {2, 4130806001517L, 149795463772692060L, 186635894390467037L, 3967304179347715805L},
+            {2, 123635709730000L, 9233062284813009L, 43835965440333360L, 761179012939631437L, 1263739024124850375L},
+            {2, 325, 9375, 28178, 450775, 9780504, 1795265022}};
 
     private static class MillerRabinTestHolder {
         private static final MillerRabinTest INSTANCE = new MillerRabinTest();
     }
 
+    private final PrimeTable primeTable;
+
+    private final ForkJoinPool pool;
+
     /**
-     * not instantiatable -> singleton because object is stateless
+     * not instantiatable -> the instance without prime table and pool is a shared singleton, the other getInstance
+     * methods create new instances
      */
-    private  MillerRabinTest() {}
+    private  MillerRabinTest() {
+        this(null, null);
+    }
+
+    private MillerRabinTest(PrimeTable primeTable, ForkJoinPool pool) {
+        this.primeTable = primeTable;
+        this.pool = pool;
+    }
 
     @Override
     public boolean isPrime(long numberToTest, int iterations) {
+        if (primeTable != null && numberToTest <= primeTable.getBound()) {
+            return primeTable.isPrime(numberToTest);
+        }
         if (numberToTest == 2 || numberToTest == 3 || numberToTest == 5) {
             return true;
         }
-        if (numberToTest == 0 || numberToTest == 1 || numberToTest % 2 == 0) {
+        if (numberToTest < 2 || numberToTest % 2 == 0) {
             return false;
         }
 
-        long oddRest = numberToTest - 1;
-        while (oddRest % 2 == 0) {
-            oddRest /= 2;
+        MontgomeryContext context = MontgomeryContext.getInstance(numberToTest);
+        int twos = Long.numberOfTrailingZeros(numberToTest - 1);
+        long oddRest = (numberToTest - 1) >>> twos;
+
+        for (int i = 0; i < iterations; i++)  {
+            long a = ThreadLocalRandom.current().nextLong(2, numberToTest - 1);
+            if (!isStrongProbablePrime(context, context.toMontgomery(a), oddRest, twos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * numbers beyond 63 bits are trial divided by the primes up to 47 and then tested with random witnesses, each round
+     * is one BigInteger.modPow (a sliding window montgomery exponentiation with intrinsic multiplication in the JVM)
+     */
+    @Override
+    public boolean isPrime(BigInteger numberToTest, int iterations) {
+        if (numberToTest.bitLength() < 64) {
+            return isPrime(numberToTest.longValue(), iterations);
+        }
+        if (numberToTest.signum() < 0) {
+            return false;
+        }
+        long rest = numberToTest.mod(SMALL_PRIMORIAL).longValue();
+        for (int p : SMALL_PRIMES) {
+            if (rest % p == 0) {
+                return false;
+            }
         }
 
+        BigInteger numberMinusOne = numberToTest.subtract(BigInteger.ONE);
+        int twos = numberMinusOne.getLowestSetBit();
+        BigInteger oddRest = numberMinusOne.shiftRight(twos);
+        return WitnessRounds.allPass(iterations, pool, () -> {
+            BigInteger x = WitnessRounds.randomWitness(numberToTest).modPow(oddRest, numberToTest);
+            if (x.equals(BigInteger.ONE) || x.equals(numberMinusOne)) {
+                return true;
+            }
+            for (int r = 1; r < twos; r++) {
+                x = x.multiply(x).mod(numberToTest);
+                if (x.equals(numberMinusOne)) {
+                    return true;
+                }
+                if (x.equals(BigInteger.ONE)) {
+                    return false;
+                }
+            }
+            return false;
+        });
+    }
 
-        for (int i = 0; i < iterations; i++)  {
-            long r = Math.abs(ThreadLocalRandom.current().nextLong());
-            long a = r % (numberToTest - 1) + 1;
-            long temp = oddRest;
-            long mod = MathTool.exponentiationModulo(a, temp, numberToTest);
-            while (temp != numberToTest - 1 && mod != 1 && mod != numberToTest - 1) {
-                mod = MathTool.multiplyModulo(mod, mod, numberToTest);
-                temp *= 2;
+    /**
+     * deterministic test, needs at most 7 montgomery exponentiations
+     *
+     * @param numberToTest the input number which should be tested if it is prime
+     * @return true if numberToTest is prime
+     */
+    @Override
+    public boolean isPrime(long numberToTest) {
+        if (primeTable != null && numberToTest <= primeTable.getBound()) {
+            return primeTable.isPrime(numberToTest);
+        }
+        if (numberToTest < 2) {
+            return false;
+        }
+        for (int p : SMALL_PRIMES) {
+            if (numberToTest % p == 0) {
+                return numberToTest == p;
             }
-            if (mod != numberToTest - 1 && temp % 2 == 0) {
+        }
+        if (numberToTest < SMALL_PRIMES_LIMIT) {
+            return true;
+        }
+
+        MontgomeryContext context = MontgomeryContext.getInstance(numberToTest);
+        int twos = Long.numberOfTrailingZeros(numberToTest - 1);
+        long oddRest = (numberToTest - 1) >>> twos;
+        int set = 0;
+        while (set < WITNESS_LIMITS.length - 1 && numberToTest >= WITNESS_LIMITS[set]) {
+            set++;
+        }
+        for (long witness : WITNESSES[set]) {
+            long a = context.toMontgomery(witness);
+            // a multiple of n is no witness
+            if (a != 0 && !isStrongProbablePrime(context, a, oddRest, twos)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * one miller rabin round for the modulus of the context
+     *
+     * @param context montgomery context of the odd number n to test
+     * @param a the witness in montgomery form
+     * @param oddRest d with n-1 = d*2^twos and d odd
+     * @param twos number of trailing zeros of n-1
+     * @return false if a proves that n is composite
+     */
+    static boolean isStrongProbablePrime(MontgomeryContext context, long a, long oddRest, int twos) {
+        long one = context.getOne();
+        long minusOne = context.negate(one);
+        long x = context.pow(a, oddRest);
+        if (x == one || x == minusOne) {
+            return true;
+        }
+        for (int r = 1; r < twos; r++) {
+            x = context.square(x);
+            if (x == minusOne) {
+                return true;
+            }
+            if (x == one) {
+                return false;
+            }
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
-        return "MillerRabinTest{}";
+        return "MillerRabinTest{" +
+                "primeTable=" + primeTable +
+                ", pool=" + pool +
+                '}';
     }
 
     /**
@@ -74,4 +216,20 @@ public final class MillerRabinTest implements ProbabilisticPrimeTest {
      * @return the one and only MillerRabinTest instance
      */
     public static MillerRabinTest getInstance() { return MillerRabinTestHolder.INSTANCE; }
+
+    /**
+     * test which answers numbers up to the bound of the table exactly by lookup
+     *
+     * @param primeTable table consulted as fast path
+     * @return MillerRabinTest instance using primeTable
+     */
+    public static MillerRabinTest getInstance(PrimeTable primeTable) { return new MillerRabinTest(primeTable, null); }
+
+    /**
+     * test which runs the rounds for numbers beyond 63 bits in parallel, it returns with the first witness found
+     *
+     * @param pool pool running the rounds
+     * @return MillerRabinTest instance using pool
+     */
+    public static MillerRabinTest getInstance(ForkJoinPool pool) { return new MillerRabinTest(null, pool); }
 }
\ No newline at end of file
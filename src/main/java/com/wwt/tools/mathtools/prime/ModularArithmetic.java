@@ -0,0 +1,239 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+import com.wwt.tools.mathtools.MontgomeryContext;
+
+/**
+ * Modular arithmetic toolkit on long: inverses, batch inversion, chinese remainder reconstruction, jacobi symbol and
+ * modular square roots. Inverses are computed with the ExtendedEuclideanAlgorithm, the given GCD calculator is used
+ * to combine moduli which are not coprime. All moduli have to be positive.
+ *
+ * @author benw@wwt
+ */
+public final class ModularArithmetic {
+
+    /** Tonelli-Shanks needs O(s^2) multiplications for p-1 = q*2^s, Cipolla is used if s^2 exceeds this value */
+    private static final int CIPOLLA_THRESHOLD = 128;
+
+    private final GreatestCommonDivisorAlgorithm gcdCalculator;
+    private final ExtendedEuclideanAlgorithm extendedEuclid = ExtendedEuclideanAlgorithm.getInstance();
+
+    private ModularArithmetic(GreatestCommonDivisorAlgorithm gcdCalculator) {
+        this.gcdCalculator = gcdCalculator;
+    }
+
+    /**
+     * @param a the number to invert
+     * @param mod the modulus
+     * @return x in [0,mod) with a*x = 1 mod mod
+     * @throws ArithmeticException if mod is not positive or a is not invertible
+     */
+    public long inverse(long a, long mod) {
+        return extendedEuclid.getInverseModulo(a, mod);
+    }
+
+    /**
+     * Montgomery's batch inversion: all values are inverted with a single modular inverse and about 3n multiplications.
+     * Nothing is allocated, values and results must be different arrays.
+     *
+     * @param values the numbers to invert
+     * @param mod the modulus
+     * @param results caller supplied array receiving the inverse of values[i] at index i
+     * @throws ArithmeticException if mod is not positive or one of the values is not invertible
+     * @throws IllegalArgumentException if results is too short or the same array as values
+     */
+    public void batchInverse(long[] values, long mod, long[] results) {
+        if(mod <= 0) throw new ArithmeticException("modulus not positive");
+        if(results.length < values.length) throw new IllegalArgumentException("result array is too short");
+        if(results == values) throw new IllegalArgumentException("values and results must be different arrays");
+        int n = values.length;
+        if(n == 0) return;
+        if((mod & 1) == 1) {
+            MontgomeryContext context = MontgomeryContext.getInstance(mod);
+            long accumulated = context.getOne();
+            for (int i = 0; i < n; i++) {
+                results[i] = accumulated;
+                accumulated = context.multiply(accumulated, context.toMontgomery(Math.floorMod(values[i], mod)));
+            }
+            long inverse = context.toMontgomery(inverse(context.fromMontgomery(accumulated), mod));
+            for (int i = n - 1; i >= 0; i--) {
+                results[i] = context.fromMontgomery(context.multiply(inverse, results[i]));
+                inverse = context.multiply(inverse, context.toMontgomery(Math.floorMod(values[i], mod)));
+            }
+        }
+        else {
+            long accumulated = 1 % mod;
+            for (int i = 0; i < n; i++) {
+                results[i] = accumulated;
+                accumulated = MathTool.multiplyModulo(accumulated, values[i], mod);
+            }
+            long inverse = inverse(accumulated, mod);
+            for (int i = n - 1; i >= 0; i--) {
+                results[i] = MathTool.multiplyModulo(inverse, results[i], mod);
+                inverse = MathTool.multiplyModulo(inverse, values[i], mod);
+            }
+        }
+    }
+
+    /**
+     * Chinese remainder reconstruction for arbitrary (not necessarily coprime) moduli
+     *
+     * @param residues the residues
+     * @param moduli the moduli, same length as residues
+     * @return the unique x in [0,lcm(moduli)) with x = residues[i] mod moduli[i] for all i
+     * @throws ArithmeticException if the congruences are inconsistent, a modulus is not positive or the lcm exceeds the long range
+     * @throws IllegalArgumentException if the arrays do not have the same length
+     */
+    public long chineseRemainder(long[] residues, long[] moduli) {
+        if(residues.length != moduli.length) throw new IllegalArgumentException("residues and moduli must have the same length");
+        long x = 0;
+        long lcm = 1;
+        for (int i = 0; i < moduli.length; i++) {
+            long m = moduli[i];
+            if(m <= 0) throw new ArithmeticException("modulus not positive");
+            long r = Math.floorMod(residues[i], m);
+            long g = gcdCalculator.getGreatestCommonDivisor(lcm, m);
+            long difference = r - x % m;
+            if(difference % g != 0) throw new ArithmeticException("congruences are inconsistent");
+            long reducedModulus = m / g;
+            long newLcm = Math.multiplyExact(lcm / g, m);
+            long t = MathTool.multiplyModulo(Math.floorMod(difference / g, reducedModulus),
+                    inverse(lcm / g, reducedModulus), reducedModulus);
+            x += lcm * t;
+            lcm = newLcm;
+        }
+        return x;
+    }
+
+    /**
+     * @param a any number
+     * @param n odd positive number
+     * @return the jacobi symbol (a/n) which is -1, 0 or 1
+     * @throws IllegalArgumentException if n is not odd and positive
+     */
+    public int jacobiSymbol(long a, long n) {
+        if(n <= 0 || (n & 1) == 0) throw new IllegalArgumentException("jacobi symbol needs an odd positive n");
+        a = Math.floorMod(a, n);
+        int result = 1;
+        while(a != 0) {
+            int twos = Long.numberOfTrailingZeros(a);
+            a >>= twos;
+            if((twos & 1) == 1 && ((n & 7) == 3 || (n & 7) == 5)) result = -result;
+            if((a & 3) == 3 && (n & 3) == 3) result = -result;
+            long h = n % a;
+            n = a;
+            a = h;
+        }
+        return n == 1 ? result : 0;
+    }
+
+    /**
+     * modular square root modulo a prime. Tonelli-Shanks is used if p-1 contains only a few factors of 2, otherwise
+     * Cipolla's algorithm which does not depend on the 2-adic structure of p-1. The primality of an odd p is not
+     * checked.
+     *
+     * @param a the number to take the root of
+     * @param p a prime
+     * @return r in [0,p) with r*r = a mod p, the other root is p-r
+     * @throws ArithmeticException if p < 2, p is even and not 2 or a is no quadratic residue modulo p
+     */
+    public long squareRoot(long a, long p) {
+        if(p < 2 || (p & 1) == 0 && p != 2) throw new ArithmeticException("modulus must be a prime");
+        a = Math.floorMod(a, p);
+        if(p == 2 || a == 0) return a;
+        if(jacobiSymbol(a, p) != 1) throw new ArithmeticException(a + " is no quadratic residue modulo " + p);
+        int twos = Long.numberOfTrailingZeros(p - 1);
+        MontgomeryContext context = MontgomeryContext.getInstance(p);
+        long root = twos * twos > CIPOLLA_THRESHOLD ? cipolla(context, a) : tonelliShanks(context, a, twos);
+        return context.fromMontgomery(root);
+    }
+
+    private long tonelliShanks(MontgomeryContext context, long a, int twos) {
+        long p = context.getModulus();
+        long one = context.getOne();
+        long oddRest = (p - 1) >>> twos;
+        long z = 2;
+        while(jacobiSymbol(z, p) != -1) z++;
+        long c = context.pow(context.toMontgomery(z), oddRest);
+        long aMontgomery = context.toMontgomery(a);
+        long t = context.pow(aMontgomery, oddRest);
+        long root = context.pow(aMontgomery, (oddRest + 1) / 2);
+        int m = twos;
+        while(t != one) {
+            int i = 0;
+            long t2 = t;
+            while(t2 != one) {
+                t2 = context.square(t2);
+                i++;
+            }
+            long b = c;
+            for (int j = 0; j < m - i - 1; j++) {
+                b = context.square(b);
+            }
+            m = i;
+            c = context.square(b);
+            t = context.multiply(t, c);
+            root = context.multiply(root, b);
+        }
+        return root;
+    }
+
+    private long cipolla(MontgomeryContext context, long a) {
+        long p = context.getModulus();
+        long t = 1;
+        while(jacobiSymbol(MathTool.multiplyModulo(t, t, p) - a, p) != -1) t++;
+        long aMontgomery = context.toMontgomery(a);
+        long tMontgomery = context.toMontgomery(t);
+        // omega^2 = t^2 - a, computations in F_p[omega]
+        long omegaSquare = context.subtract(context.square(tMontgomery), aMontgomery);
+        long x = context.getOne();
+        long y = 0;
+        long baseX = tMontgomery;
+        long baseY = context.getOne();
+        long exp = (p + 1) >>> 1;
+        for (int i = 63 - Long.numberOfLeadingZeros(exp); i >= 0; i--) {
+            long xx = context.add(context.square(x), context.multiply(context.square(y), omegaSquare));
+            long yy = context.multiply(context.add(x, x), y);
+            x = xx;
+            y = yy;
+            if(((exp >>> i) & 1) != 0) {
+                xx = context.add(context.multiply(x, baseX), context.multiply(context.multiply(y, baseY), omegaSquare));
+                yy = context.add(context.multiply(x, baseY), context.multiply(y, baseX));
+                x = xx;
+                y = yy;
+            }
+        }
+        return x;
+    }
+
+    @Override
+    public String toString() {
+        return "ModularArithmetic{" +
+                "gcdCalculator=" + gcdCalculator +
+                '}';
+    }
+
+    /**
+     * For future caching of objects if needed
+     *
+     * @param gcdCalculator used for combining moduli in the chinese remainder reconstruction
+     * @return ModularArithmetic instance
+     */
+    public static ModularArithmetic getInstance(GreatestCommonDivisorAlgorithm gcdCalculator) {
+        return new ModularArithmetic(gcdCalculator);
+    }
+}
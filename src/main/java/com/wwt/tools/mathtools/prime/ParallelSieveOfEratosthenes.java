@@ -0,0 +1,210 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Multi core sieve of Eratosthenes. The range is split into independent chunks of cache sized segments which are sieved
+ * on an executor, every worker thread uses its own scratch bitmap. The chunks are merged in ascending order, so the
+ * output is deterministic. At most 2*parallelism chunks are in flight, so the memory stays bounded for wide ranges.
+ *
+ * @author benw@wwt
+ */
+public final class ParallelSieveOfEratosthenes implements PrimeSequenceGenerator {
+
+    /** number of odd numbers per segment, 2^18 bits = 32 KB */
+    private static final int SEGMENT_SIZE = 1 << 18;
+    private static final long SEGMENT_SPAN = 2L * SEGMENT_SIZE;
+    private static final int MAX_SEGMENTS_PER_CHUNK = 64;
+    /** one scratch bitmap per worker thread, shared by all instances so that it lives as long as the thread */
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[SEGMENT_SIZE >>> 6]);
+
+    private static class ParallelSieveOfEratosthenesHolder {
+        private static final ParallelSieveOfEratosthenes INSTANCE =
+                new ParallelSieveOfEratosthenes(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors());
+    }
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private ParallelSieveOfEratosthenes(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
+        List<LongPrimeSequence> chunks = new ArrayList<>();
+        sieveChunks(2, upperBound, chunks::add);
+        int size = 0;
+        for (LongPrimeSequence chunk : chunks) {
+            size += chunk.size();
+        }
+        int[] primeNumbers = new int[size];
+        int n = 0;
+        for (LongPrimeSequence chunk : chunks) {
+            for (int i = 0; i < chunk.size(); i++) {
+                primeNumbers[n++] = (int) chunk.getLong(i);
+            }
+        }
+        return PrimeSequence.wrap(primeNumbers, size);
+    }
+
+    /**
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive)
+     * @return all primes in [lowerBound,upperBound]
+     */
+    public LongPrimeSequence getPrimeSequence(long lowerBound, long upperBound) {
+        LongPrimeSequence.Builder primeNumbers = new LongPrimeSequence.Builder(1 << 10);
+        sieve(lowerBound, upperBound, primeNumbers::add);
+        return primeNumbers.build();
+    }
+
+    /**
+     * hands all primes in [lowerBound,upperBound] in ascending order to the consumer, the consumer is called from the
+     * calling thread only
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive)
+     * @param consumer receives the primes, chunk by chunk
+     */
+    public void sieve(long lowerBound, long upperBound, LongConsumer consumer) {
+        sieveChunks(lowerBound, upperBound, chunk -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                consumer.accept(chunk.getLong(i));
+            }
+        });
+    }
+
+    private void sieveChunks(long lowerBound, long upperBound, Consumer<LongPrimeSequence> consumer) {
+        if(upperBound < 2 || lowerBound > upperBound) return;
+        if(lowerBound <= 2) {
+            LongPrimeSequence.Builder two = new LongPrimeSequence.Builder(1);
+            two.add(2);
+            consumer.accept(two.build());
+        }
+        long start = Math.max(3, lowerBound | 1);
+        if(start > upperBound) return;
+        int[] basePrimes = SegmentedSieveOfEratosthenes.oddPrimesUpTo(MathTool.isqrt(upperBound));
+        long chunkSpan = chunkSpan(upperBound - start + 1);
+        ArrayDeque<Future<LongPrimeSequence>> pending = new ArrayDeque<>();
+        try {
+            long next = start;
+            boolean submittedAll = false;
+            while(!submittedAll || !pending.isEmpty()) {
+                while(!submittedAll && pending.size() < 2 * parallelism) {
+                    long chunkLow = next;
+                    long chunkHigh = upperBound - chunkLow < chunkSpan - 1 ? upperBound : chunkLow + chunkSpan - 1;
+                    pending.add(executor.submit(() -> sieveChunk(basePrimes, chunkLow, chunkHigh)));
+                    submittedAll = chunkHigh == upperBound;
+                    next = chunkHigh + 1;
+                }
+                consumer.accept(await(pending.poll()));
+            }
+        }
+        finally {
+            for (Future<LongPrimeSequence> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * chunks of whole segments, about 4 chunks per thread but at most MAX_SEGMENTS_PER_CHUNK segments per chunk
+     */
+    private long chunkSpan(long width) {
+        long segments = width / SEGMENT_SPAN / (4L * parallelism);
+        return SEGMENT_SPAN * Math.max(1, Math.min(MAX_SEGMENTS_PER_CHUNK, segments));
+    }
+
+    private LongPrimeSequence sieveChunk(int[] basePrimes, long chunkLow, long chunkHigh) {
+        long[] bits = SCRATCH.get();
+        LongPrimeSequence.Builder primeNumbers = new LongPrimeSequence.Builder(
+                (int) (1.25 * (chunkHigh - chunkLow) / Math.log(Math.max(chunkHigh, 3))));
+        long segmentLow = chunkLow;
+        while(segmentLow <= chunkHigh) {
+            long segmentHigh = chunkHigh - segmentLow < SEGMENT_SPAN - 1 ? chunkHigh : segmentLow + SEGMENT_SPAN - 1;
+            int count = (int) ((segmentHigh - segmentLow) / 2 + 1);
+            SegmentedSieveOfEratosthenes.sieveSegment(basePrimes, segmentLow, segmentHigh, count, bits);
+            SegmentedSieveOfEratosthenes.emitPrimes(bits, count, segmentLow, primeNumbers::add);
+            if(segmentHigh == chunkHigh) break;
+            segmentLow = segmentHigh + 1;
+        }
+        return primeNumbers.build();
+    }
+
+    private static LongPrimeSequence await(Future<LongPrimeSequence> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while sieving", e);
+        }
+        catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelSieveOfEratosthenes{" +
+                "parallelism=" + parallelism +
+                '}';
+    }
+
+    /**
+     * Default instance running on the common ForkJoinPool with one chunk stream per available processor
+     *
+     * @return the default ParallelSieveOfEratosthenes instance
+     */
+    public static ParallelSieveOfEratosthenes getInstance() { return ParallelSieveOfEratosthenesHolder.INSTANCE; }
+
+    /**
+     *
+     * @param parallelism number of chunks sieved at the same time on the common ForkJoinPool
+     * @return ParallelSieveOfEratosthenes instance with the given parallelism
+     * @throws IllegalArgumentException if parallelism < 1
+     */
+    public static ParallelSieveOfEratosthenes getInstance(int parallelism) {
+        return getInstance(ForkJoinPool.commonPool(), parallelism);
+    }
+
+    /**
+     *
+     * @param executor executor running the chunks, the caller is responsible for shutting it down
+     * @param parallelism number of chunks sieved at the same time
+     * @return ParallelSieveOfEratosthenes instance running on the given executor
+     * @throws IllegalArgumentException if parallelism < 1
+     */
+    public static ParallelSieveOfEratosthenes getInstance(ExecutorService executor, int parallelism) {
+        if(parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+        return new ParallelSieveOfEratosthenes(executor, parallelism);
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MontgomeryContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pollard's rho factorization with Brent's cycle detection. The iteration x -> x^2+c runs in montgomery form and the
+ * differences are multiplied up in batches of GCD_BATCH, so only one gcd is needed per batch; if a batch overshoots
+ * to gcd = n the last batch is replayed step by step. Small factors are removed by trial division first, the
+ * recursion on the split factors stops as soon as the PrimeTest proves a factor prime. The expected number of steps
+ * is about sqrt(p) for the smallest prime factor p, so every long is factorized in milliseconds.
+ *
+ * @author benw@wwt
+ */
+public final class PollardRhoFactorization implements FactorizationAlgorithm {
+
+    /** primes below this bound are removed by trial division */
+    private static final int TRIAL_DIVISION_BOUND = 1 << 8;
+    /** number of steps whose differences share one gcd */
+    private static final int GCD_BATCH = 128;
+
+    private final PrimeTest primeTest;
+    private final GreatestCommonDivisorAlgorithm gcdCalculator = IterativeGCDAlgorithm.getInstance();
+
+    private PollardRhoFactorization(PrimeTest primeTest) {
+        this.primeTest = primeTest;
+    }
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    @Override
+    public List<Long> factorize(final long number) {
+        if(number < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
+        List<Long> returnValue = new ArrayList<>();
+        long toSplit = number;
+        PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence(TRIAL_DIVISION_BOUND);
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.getInt(i);
+            while(toSplit % prime == 0) {
+                returnValue.add(prime);
+                toSplit /= prime;
+            }
+        }
+        split(toSplit, returnValue);
+        Collections.sort(returnValue);
+        return returnValue;
+    }
+
+    /**
+     * adds the prime factors of the odd number n without factors below TRIAL_DIVISION_BOUND
+     */
+    private void split(long n, List<Long> factors) {
+        if(n == 1) return;
+        if(n < (long) TRIAL_DIVISION_BOUND * TRIAL_DIVISION_BOUND || primeTest.isPrime(n)) {
+            factors.add(n);
+            return;
+        }
+        long divisor = findDivisor(n);
+        split(divisor, factors);
+        split(n / divisor, factors);
+    }
+
+    /**
+     * @param n odd composite number
+     * @return a non trivial divisor of n
+     */
+    long findDivisor(long n) {
+        return findDivisor(n, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param n odd composite number
+     * @param maxSteps bound for the iterations per constant c, the search stops after the first c reaching it
+     * @return a non trivial divisor of n, 0 if none was found within maxSteps
+     */
+    long findDivisor(long n, long maxSteps) {
+        MontgomeryContext context = MontgomeryContext.getInstance(n);
+        for (long c = 1; ; c++) {
+            long divisor = brent(context, context.toMontgomery(c), maxSteps);
+            if(divisor == 1) return 0;
+            if(divisor != n) return divisor;
+        }
+    }
+
+    /**
+     * Brent's variant of the rho iteration f(x) = x^2+c
+     *
+     * @param context montgomery context of n
+     * @param c the constant in montgomery form
+     * @param maxSteps the cycle search stops once the next doubling would exceed this number of iterations
+     * @return a divisor of n, n itself if the iteration failed for this c, 1 if maxSteps was reached
+     */
+    private long brent(MontgomeryContext context, long c, long maxSteps) {
+        long n = context.getModulus();
+        long y = context.toMontgomery(2);
+        long q = context.getOne();
+        long x;
+        long ys;
+        long g;
+        long r = 1;
+        do {
+            x = y;
+            for (long i = 0; i < r; i++) {
+                y = context.add(context.square(y), c);
+            }
+            long k = 0;
+            do {
+                ys = y;
+                long steps = Math.min(GCD_BATCH, r - k);
+                for (long i = 0; i < steps; i++) {
+                    y = context.add(context.square(y), c);
+                    // the montgomery factors 2^64 are coprime to n and do not change the gcd
+                    q = context.multiply(q, context.subtract(x, y));
+                }
+                g = gcdCalculator.getGreatestCommonDivisor(q, n);
+                k += steps;
+            } while(k < r && g == 1);
+            r <<= 1;
+        } while(g == 1 && r <= maxSteps >>> 1);
+        if(g == 1) return 1;
+        if(g == n) {
+            // the batch contains the factor and the whole cycle, replay it with a gcd per step
+            do {
+                ys = context.add(context.square(ys), c);
+                g = gcdCalculator.getGreatestCommonDivisor(context.subtract(x, ys), n);
+            } while(g == 1);
+        }
+        return g;
+    }
+
+    @Override
+    public String toString() {
+        return "PollardRhoFactorization{" +
+                "primeTest=" + primeTest +
+                '}';
+    }
+
+    /**
+     *
+     * @return PollardRhoFactorization using the deterministic MillerRabinTest
+     */
+    public static PollardRhoFactorization getInstance() {
+        return new PollardRhoFactorization(MillerRabinTest.getInstance());
+    }
+
+    /**
+     *
+     * @param primeTest deterministic test which stops the recursion
+     * @return PollardRhoFactorization using primeTest
+     */
+    public static PollardRhoFactorization getInstance(PrimeTest primeTest) {
+        return new PollardRhoFactorization(primeTest);
+    }
+}
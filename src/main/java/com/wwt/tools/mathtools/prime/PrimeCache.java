@@ -0,0 +1,101 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.util.Arrays;
+
+/**
+ * Process wide cache of the primes up to a growing bound. Readers only read a volatile reference to an immutable
+ * snapshot, so they never block. If a bigger bound is requested, one writer at a time extends the cache to at least
+ * twice the old bound by sieving the new range with the wheel sieve and publishes a new snapshot. The sequences
+ * handed out share the array of the snapshot, so repeated requests do not copy.
+ *
+ * @author benw@wwt
+ */
+public final class PrimeCache implements PrimeSequenceGenerator {
+
+    private static final int INITIAL_BOUND = 1 << 16;
+
+    private static class PrimeCacheHolder {
+        private static final PrimeCache INSTANCE = new PrimeCache();
+    }
+
+    private static final class Snapshot {
+        private final int[] primes;
+        private final int size;
+        private final int bound;
+
+        private Snapshot(int[] primes, int size, int bound) {
+            this.primes = primes;
+            this.size = size;
+            this.bound = bound;
+        }
+    }
+
+    private final Object growLock = new Object();
+    private volatile Snapshot snapshot;
+
+    /**
+     * not instantiatable -> process wide singleton
+     */
+    private PrimeCache() {
+        PrimeSequence initial = WheelSieveOfEratosthenes.getInstance().getPrimeSequence(INITIAL_BOUND);
+        snapshot = new Snapshot(initial.toIntArray(), initial.size(), INITIAL_BOUND);
+    }
+
+    @Override
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
+        Snapshot current = snapshot;
+        if(current.bound < upperBound) current = grow(upperBound);
+        int index = Arrays.binarySearch(current.primes, 0, current.size, upperBound);
+        return PrimeSequence.wrap(current.primes, index >= 0 ? index + 1 : -(index + 1));
+    }
+
+    /**
+     * @return the bound up to which the primes are cached at the moment
+     */
+    public int getBound() {
+        return snapshot.bound;
+    }
+
+    private Snapshot grow(int upperBound) {
+        synchronized (growLock) {
+            Snapshot current = snapshot;
+            if(current.bound >= upperBound) return current;
+            int newBound = (int) Math.min(Integer.MAX_VALUE, Math.max(upperBound, 2L * current.bound));
+            int[] primes = Arrays.copyOf(current.primes, PrimeSequence.estimateCapacity(newBound));
+            int[] size = {current.size};
+            WheelSieveOfEratosthenes.getInstance().sieve(current.bound + 1L, newBound, p -> primes[size[0]++] = (int) p);
+            Snapshot grown = new Snapshot(primes, size[0], newBound);
+            snapshot = grown;
+            return grown;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrimeCache{" +
+                "bound=" + snapshot.bound +
+                '}';
+    }
+
+    /**
+     * Singleton instance
+     *
+     * @return the one and only PrimeCache instance
+     */
+    public static PrimeCache getInstance() { return PrimeCacheHolder.INSTANCE; }
+}
@@ -0,0 +1,287 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Prime counting function pi(x) and sum of primes up to x without enumerating the primes (Lucy Hedgehog's method).
+ * S(v,p) is the number (or sum) of integers in [2,v] which are prime or have no prime factor <= p. Only the values
+ * v = x/k are needed, which are stored in two arrays of size sqrt(x): small[v] for v <= sqrt(x) and large[k] for
+ * v = x/k. Sieving with every prime p <= sqrt(x) applies S(v,p) = S(v,p-1) - w(p)*(S(v/p,p-1) - S(p-1,p-1)) to all
+ * v >= p^2, where w(p) is 1 for counting and p for sums. This needs O(x^(3/4)/log x) time and O(sqrt(x)) memory,
+ * pi(10^13) takes about 8 seconds on one core. The sums exceed long beyond x = 6*10^9 and are therefore kept as 128 bit numbers in two
+ * longs. In parallel mode the updates of each sieving step are split into chunks running in the given ForkJoinPool.
+ *
+ * @author benw@wwt
+ */
+public final class PrimeCounting {
+
+    /** chunk size below which a sieving step is not split further */
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final long[] FIRST_PRIMES = {2, 3, 5, 7, 11};
+    /** nthPrime sieves [2,upper bound] directly below this bound instead of counting */
+    private static final long DIRECT_SIEVE_LIMIT = 1 << 22;
+    private static final double EULER_GAMMA = 0.5772156649015329;
+
+    private final ForkJoinPool pool;
+
+    private PrimeCounting(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     *
+     * @param x upper bound (inclusive)
+     * @return the number of primes <= x
+     * @throws IllegalArgumentException if sqrt(x) exceeds the int range
+     */
+    public long pi(long x) {
+        if(x < 2) return 0;
+        int r = squareRoot(x);
+        int[] small = new int[r + 1];
+        long[] large = new long[r + 1];
+        for (int v = 1; v <= r; v++) {
+            small[v] = v - 1;
+            large[v] = x / v - 1;
+        }
+        for (int p = 2; p <= r; p++) {
+            if(small[p] == small[p - 1]) continue;
+            final int prime = p;
+            final int c = small[p - 1];
+            long square = (long) p * p;
+            int limit = (int) Math.min(r, x / square);
+            int direct = Math.min(limit, r / p);
+            // x/(kp) > sqrt(x) is in large, ascending k reads large[kp] before it is updated
+            for (int k = 1; k <= direct; k++) {
+                large[k] -= large[k * p] - c;
+            }
+            forRange(direct + 1, limit + 1, (from, to) -> {
+                for (int k = from; k < to; k++) {
+                    large[k] -= small[(int) (x / ((long) k * prime))] - c;
+                }
+            });
+            if(square <= r) {
+                int[] old = Arrays.copyOf(small, r / p + 1);
+                forRange((int) square, r + 1, (from, to) -> {
+                    for (int v = from; v < to; v++) {
+                        small[v] -= old[v / prime] - c;
+                    }
+                });
+            }
+        }
+        return large[1];
+    }
+
+    /**
+     *
+     * @param x upper bound (inclusive)
+     * @return the sum of all primes <= x
+     * @throws IllegalArgumentException if sqrt(x) exceeds the int range
+     */
+    public BigInteger primeSum(long x) {
+        if(x < 2) return BigInteger.ZERO;
+        int r = squareRoot(x);
+        long[] small = new long[r + 1];
+        long[] largeLow = new long[r + 1];
+        long[] largeHigh = new long[r + 1];
+        for (int v = 1; v <= r; v++) {
+            small[v] = (long) v * (v + 1) / 2 - 1;
+            // n*(n+1)/2 - 1 as 128 bit number, the even factor is halved first
+            long n = x / v;
+            long a = (n & 1) == 0 ? n / 2 : n;
+            long b = (n & 1) == 0 ? n + 1 : (n + 1) / 2;
+            largeLow[v] = a * b - 1;
+            largeHigh[v] = MathTool.multiplyHighUnsigned(a, b) - (a * b == 0 ? 1 : 0);
+        }
+        for (int p = 2; p <= r; p++) {
+            if(small[p] == small[p - 1]) continue;
+            final int prime = p;
+            final long c = small[p - 1];
+            long square = (long) p * p;
+            int limit = (int) Math.min(r, x / square);
+            int direct = Math.min(limit, r / p);
+            for (int k = 1; k <= direct; k++) {
+                subtractLarge(largeLow, largeHigh, k, largeLow[k * p], largeHigh[k * p], c, p);
+            }
+            forRange(direct + 1, limit + 1, (from, to) -> {
+                for (int k = from; k < to; k++) {
+                    subtractLarge(largeLow, largeHigh, k, small[(int) (x / ((long) k * prime))], 0, c, prime);
+                }
+            });
+            if(square <= r) {
+                long[] old = Arrays.copyOf(small, r / p + 1);
+                forRange((int) square, r + 1, (from, to) -> {
+                    for (int v = from; v < to; v++) {
+                        small[v] -= prime * (old[v / prime] - c);
+                    }
+                });
+            }
+        }
+        return BigInteger.valueOf(largeHigh[1]).shiftLeft(64).or(new BigInteger(Long.toUnsignedString(largeLow[1])));
+    }
+
+    /**
+     * The k-th prime is located in three steps: the logarithmic integral li(x) is inverted with Newton's method, which
+     * estimates p_k within about sqrt(p_k), the estimate is clamped to the bounds of Rosser and Schoenfeld
+     * k(ln k + ln ln k - 1) < p_k < k(ln k + ln ln k) for k >= 6, then pi of the estimate is computed exactly and the
+     * remaining distance is closed by sieving short windows forward or backward. So the cost is one pi(x) evaluation,
+     * k = 10^11 takes a few seconds on one core.
+     *
+     * @param k the position of the prime, starting with nthPrime(1) = 2
+     * @return the k-th prime
+     * @throws IllegalArgumentException if k < 1 or the k-th prime is too big
+     */
+    public long nthPrime(long k) {
+        if(k < 1) throw new IllegalArgumentException("k must be positive");
+        if(k <= FIRST_PRIMES.length) return FIRST_PRIMES[(int) k - 1];
+        double logK = Math.log(k);
+        double logLogK = Math.log(logK);
+        double lower = k * (logK + logLogK - 1);
+        double upper = k * (logK + logLogK);
+        if(upper > 1e18) throw new IllegalArgumentException("k too big");
+        if(upper < DIRECT_SIEVE_LIMIT) {
+            return SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(2, (long) upper).getLong((int) k - 1);
+        }
+        double estimate = upper;
+        for (int i = 0; i < 8; i++) {
+            estimate -= (logarithmicIntegral(estimate) - k) * Math.log(estimate);
+        }
+        long x = (long) Math.max(lower, Math.min(upper, estimate));
+        long count = pi(x);
+        long window = (long) ((Math.abs(k - count) + 64) * Math.log(x));
+        SegmentedSieveOfEratosthenes sieve = SegmentedSieveOfEratosthenes.getInstance();
+        while(count < k) {
+            // the k-th prime is > x
+            LongPrimeSequence primes = sieve.getPrimeSequence(x + 1, x + window);
+            if(count + primes.size() >= k) return primes.getLong((int) (k - count - 1));
+            count += primes.size();
+            x += window;
+        }
+        while(true) {
+            // the k-th prime is <= x, count = pi(x) >= k
+            LongPrimeSequence primes = sieve.getPrimeSequence(x - window + 1, x);
+            if(count - primes.size() < k) return primes.getLong((int) (k - (count - primes.size()) - 1));
+            count -= primes.size();
+            x -= window;
+        }
+    }
+
+    /**
+     * logarithmic integral li(x) = gamma + ln ln x + sum (ln x)^n / (n n!), used to estimate pi(x)
+     */
+    private static double logarithmicIntegral(double x) {
+        double logX = Math.log(x);
+        double sum = 0;
+        double term = 1;
+        for (int n = 1; n < 1000; n++) {
+            term *= logX / n;
+            double summand = term / n;
+            sum += summand;
+            if(summand < 1e-17 * sum) break;
+        }
+        return EULER_GAMMA + Math.log(logX) + sum;
+    }
+
+    /**
+     * large[k] -= p * (value - c) in 128 bit arithmetic, value is given as high and low word
+     */
+    private static void subtractLarge(long[] largeLow, long[] largeHigh, int k, long valueLow, long valueHigh, long c, int p) {
+        long differenceLow = valueLow - c;
+        long differenceHigh = valueHigh - (Long.compareUnsigned(valueLow, c) < 0 ? 1 : 0);
+        long productLow = differenceLow * p;
+        long productHigh = differenceHigh * p + MathTool.multiplyHighUnsigned(differenceLow, p);
+        long low = largeLow[k];
+        largeLow[k] = low - productLow;
+        largeHigh[k] -= productHigh + (Long.compareUnsigned(low, productLow) < 0 ? 1 : 0);
+    }
+
+    private static int squareRoot(long x) {
+        long r = MathTool.isqrt(x);
+        if(r > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("x too big");
+        return (int) r;
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void apply(int fromIndex, int toIndex);
+    }
+
+    /**
+     * runs the action for [fromIndex,toIndex), split into chunks in the pool if there is one
+     */
+    private void forRange(int fromIndex, int toIndex, RangeAction action) {
+        if(toIndex <= fromIndex) return;
+        if(pool == null || toIndex - fromIndex <= PARALLEL_THRESHOLD) {
+            action.apply(fromIndex, toIndex);
+        }
+        else {
+            pool.invoke(new RangeTask(action, fromIndex, toIndex));
+        }
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeAction action;
+        private final int fromIndex;
+        private final int toIndex;
+
+        private RangeTask(RangeAction action, int fromIndex, int toIndex) {
+            this.action = action;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if(toIndex - fromIndex <= PARALLEL_THRESHOLD) {
+                action.apply(fromIndex, toIndex);
+                return;
+            }
+            int middle = (fromIndex + toIndex) >>> 1;
+            invokeAll(new RangeTask(action, fromIndex, middle), new RangeTask(action, middle, toIndex));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrimeCounting{" +
+                "pool=" + pool +
+                '}';
+    }
+
+    /**
+     *
+     * @return sequential PrimeCounting
+     */
+    public static PrimeCounting getInstance() {
+        return new PrimeCounting(null);
+    }
+
+    /**
+     *
+     * @param pool pool running the chunks of every sieving step
+     * @return parallel PrimeCounting
+     */
+    public static PrimeCounting getInstance(ForkJoinPool pool) {
+        return new PrimeCounting(pool);
+    }
+}
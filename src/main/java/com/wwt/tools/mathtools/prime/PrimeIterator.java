@@ -0,0 +1,178 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Unbounded iterator over the primes in ascending order. The primes are sieved lazily segment by segment, the segments
+ * start small and grow up to a cache sized bitmap, so creating and abandoning an iterator early is cheap.
+ * The base primes are extended on demand. skipTo starts mid range without sieving from 2.
+ * Instances are not thread safe.
+ *
+ * @author benw@wwt
+ */
+public final class PrimeIterator implements PrimitiveIterator.OfLong {
+
+    /** number of odd numbers in the first segment */
+    private static final int INITIAL_SEGMENT_SIZE = 1 << 10;
+    /** number of odd numbers per segment at most, 2^18 bits = 32 KB */
+    private static final int MAX_SEGMENT_SIZE = 1 << 18;
+    /** the base primes are sieved with the simple sieve, so they are limited to unsigned int */
+    private static final long MAX_BASE_PRIME_LIMIT = 0xFFFFFFFFL;
+
+    private int[] basePrimes = new int[0];
+    private long basePrimeLimit = 2;
+    private long[] bits = new long[INITIAL_SEGMENT_SIZE >>> 6];
+    private int segmentSize;
+    private long segmentLow;
+    private int count;
+    private int position;
+    private long nextSegmentLow;
+    private boolean exhausted;
+    private boolean twoPending;
+    private long lookahead;
+
+    private PrimeIterator(long start) {
+        skipTo(start);
+    }
+
+    /**
+     * repositions the iterator, the next prime returned is the smallest prime >= n
+     *
+     * @param n new start of the iteration
+     */
+    public void skipTo(long n) {
+        twoPending = n <= 2;
+        nextSegmentLow = Math.max(3, n | 1);
+        exhausted = n > Long.MAX_VALUE - 1;
+        segmentSize = INITIAL_SEGMENT_SIZE;
+        count = 0;
+        position = 0;
+        lookahead = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(lookahead == 0) lookahead = advance();
+        return lookahead > 0;
+    }
+
+    @Override
+    public long nextLong() {
+        if(!hasNext()) throw new NoSuchElementException("no more primes in the long range");
+        long prime = lookahead;
+        lookahead = 0;
+        return prime;
+    }
+
+    /**
+     * @return the next prime or -1 if the long range is exhausted
+     */
+    private long advance() {
+        if(twoPending) {
+            twoPending = false;
+            return 2;
+        }
+        while(true) {
+            while(position < count) {
+                int word = position >>> 6;
+                long candidates = ~bits[word] & (-1L << position);
+                if(candidates != 0) {
+                    int index = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                    if(index >= count) break;
+                    position = index + 1;
+                    return segmentLow + 2L * index;
+                }
+                position = (word + 1) << 6;
+            }
+            if(exhausted) return -1;
+            sieveNextSegment();
+        }
+    }
+
+    private void sieveNextSegment() {
+        segmentLow = nextSegmentLow;
+        long span = 2L * segmentSize;
+        long segmentHigh = Long.MAX_VALUE - segmentLow < span - 1 ? Long.MAX_VALUE : segmentLow + span - 1;
+        ensureBasePrimes(MathTool.isqrt(segmentHigh));
+        if(bits.length < segmentSize >>> 6) bits = new long[segmentSize >>> 6];
+        count = (int) ((segmentHigh - segmentLow) / 2 + 1);
+        SegmentedSieveOfEratosthenes.sieveSegment(basePrimes, segmentLow, segmentHigh, count, bits);
+        position = 0;
+        if(segmentHigh == Long.MAX_VALUE) {
+            exhausted = true;
+        }
+        else {
+            nextSegmentLow = segmentHigh + 1;
+        }
+        segmentSize = Math.min(MAX_SEGMENT_SIZE, segmentSize << 1);
+    }
+
+    private void ensureBasePrimes(long limit) {
+        if(limit <= basePrimeLimit) return;
+        basePrimeLimit = Math.min(MAX_BASE_PRIME_LIMIT, Math.max(limit, 2 * basePrimeLimit));
+        basePrimes = SegmentedSieveOfEratosthenes.oddPrimesUpTo(basePrimeLimit);
+    }
+
+    @Override
+    public String toString() {
+        return "PrimeIterator{" +
+                "segmentLow=" + segmentLow +
+                '}';
+    }
+
+    /**
+     *
+     * @return iterator over all primes starting with 2
+     */
+    public static PrimeIterator getInstance() {
+        return new PrimeIterator(2);
+    }
+
+    /**
+     *
+     * @param start first number to consider
+     * @return iterator over all primes >= start
+     */
+    public static PrimeIterator getInstance(long start) {
+        return new PrimeIterator(start);
+    }
+
+    /**
+     *
+     * @return lazy, sequential stream of all primes starting with 2
+     */
+    public static LongStream stream() {
+        return stream(2);
+    }
+
+    /**
+     *
+     * @param start first number to consider
+     * @return lazy, sequential stream of all primes >= start
+     */
+    public static LongStream stream(long start) {
+        return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(getInstance(start),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL), false);
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Immutable sequence of ascending int primes backed by an int array, so no Integer objects are kept.
+ * It can be used as List&lt;Integer&gt; (boxing only happens on access), the primitive accessors getInt, intStream and
+ * copyInto avoid boxing completely.
+ *
+ * @author benw@wwt
+ */
+public final class PrimeSequence extends AbstractList<Integer> implements RandomAccess {
+
+    private final int[] primes;
+    private final int size;
+
+    private PrimeSequence(int[] primes, int size) {
+        this.primes = primes;
+        this.size = size;
+    }
+
+    /**
+     * @param index position in the sequence
+     * @return the prime at index without boxing
+     * @throws IndexOutOfBoundsException if index is not in [0,size)
+     */
+    public int getInt(int index) {
+        if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return primes[index];
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * binary search, the sequence is sorted
+     */
+    @Override
+    public int indexOf(Object o) {
+        if(!(o instanceof Integer)) return -1;
+        int index = Arrays.binarySearch(primes, 0, size, (Integer) o);
+        return index < 0 ? -1 : index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * @return the primes as IntStream
+     */
+    public IntStream intStream() {
+        return Arrays.stream(primes, 0, size);
+    }
+
+    /**
+     * @return the primes as LongStream
+     */
+    public LongStream longStream() {
+        return intStream().asLongStream();
+    }
+
+    /**
+     * @return a copy of the primes
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(primes, size);
+    }
+
+    /**
+     * copies the primes into a caller supplied buffer, at most until the end of the buffer
+     *
+     * @param destination the buffer
+     * @param destinationOffset first position to write to
+     * @return the number of primes written
+     */
+    public int copyInto(int[] destination, int destinationOffset) {
+        int length = Math.min(size, destination.length - destinationOffset);
+        System.arraycopy(primes, 0, destination, destinationOffset, length);
+        return length;
+    }
+
+    /**
+     * wraps the given array without copying
+     *
+     * @param primes ascending primes, the array must not be modified afterwards
+     * @param size number of valid entries
+     * @return the sequence
+     */
+    static PrimeSequence wrap(int[] primes, int size) {
+        return new PrimeSequence(primes, size);
+    }
+
+    /**
+     * growable int buffer used by the generators which do not know the number of primes in advance
+     */
+    static final class Builder {
+        private int[] primes;
+        private int size;
+
+        Builder(int initialCapacity) {
+            primes = new int[Math.max(16, initialCapacity)];
+        }
+
+        void add(int prime) {
+            if(size == primes.length) primes = Arrays.copyOf(primes, primes.length + (primes.length >> 1));
+            primes[size++] = prime;
+        }
+
+        PrimeSequence build() {
+            return new PrimeSequence(primes, size);
+        }
+    }
+
+    /**
+     * upper bound for the number of primes <= x (Rosser and Schoenfeld), used to size buffers
+     */
+    static int estimateCapacity(long x) {
+        if(x < 17) return 6;
+        return (int) Math.min(Integer.MAX_VALUE - 8, (long) (1.25506 * x / Math.log(x)) + 1);
+    }
+}
@@ -14,8 +14,6 @@
  */
 package com.wwt.tools.mathtools.prime;
 
-import java.util.List;
-
 /**
  * interface for prime sequence generators
  * @author benw@wwt
@@ -28,5 +26,18 @@ public interface PrimeSequenceGenerator {
      * @param upperBound the upper bound for the list of prime numbers
      * @return all prime numbers in (0..upperBound)
      */
-    List<Integer> getPrimeSequence(int upperBound);
+    PrimeSequence getPrimeSequence(int upperBound);
+
+    /**
+     * writes the prime numbers in (0..upperBound) into a caller supplied buffer
+     *
+     * @param upperBound the upper bound for the prime numbers
+     * @param buffer receives the primes in ascending order
+     * @return the number of primes in (0..upperBound), only the first buffer.length of them are written
+     */
+    default int fillPrimeSequence(int upperBound, int[] buffer) {
+        PrimeSequence primes = getPrimeSequence(upperBound);
+        primes.copyInto(buffer, 0);
+        return primes.size();
+    }
 }
@@ -0,0 +1,244 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+/**
+ * Immutable, succinct table of all primes up to a bound of at most 2^32, built by one run of the wheel sieve.
+ * The numbers coprime to 30 are stored in a bitmap (8 bits per 30 integers), a rank directory holds the number of primes
+ * before every 512 bit block and a select directory the block of every 512th prime. So isPrime is a bit test,
+ * pi and nextPrime / prevPrime need at most 8 popcounts and nthPrime scans a few directory entries and one word.
+ * The directories add 6.25% and less than 1% to the bitmap, the table up to 2^32 needs about 155 MB.
+ *
+ * @author benw@wwt
+ */
+public final class PrimeTable {
+
+    public static final long MAX_BOUND = 1L << 32;
+    /** 64 bit words per rank block */
+    private static final int WORDS_PER_BLOCK = 8;
+    /** set bits per select sample */
+    private static final int SELECT_SAMPLE = 512;
+    private static final int SEGMENT_BYTES = 1 << 18;
+    /** number of residues coprime to 30 which are <= r */
+    private static final int[] RESIDUES_UP_TO = new int[30];
+
+    static {
+        for (int r = 0, count = 0; r < 30; r++) {
+            if(WheelSieveOfEratosthenes.BIT_OF_RESIDUE[r] >= 0) count++;
+            RESIDUES_UP_TO[r] = count;
+        }
+    }
+
+    private final long bound;
+    /** bit 8*(n/30)+BIT_OF_RESIDUE[n%30] is set if n is a prime > 5 */
+    private final long[] bits;
+    /** number of set bits before each block */
+    private final int[] rank;
+    /** block containing set bit i*SELECT_SAMPLE */
+    private final int[] select;
+    private final long count;
+
+    private PrimeTable(long bound) {
+        this.bound = bound;
+        int byteCount = (int) (bound / 30 + 1);
+        int wordCount = (byteCount + 7) / 8;
+        int blockCount = (wordCount + WORDS_PER_BLOCK - 1) / WORDS_PER_BLOCK;
+        // one zero block as sentinel, so that rank and select never run over the end
+        this.bits = new long[(blockCount + 1) * WORDS_PER_BLOCK];
+        int[] basePrimes = SegmentedSieveOfEratosthenes.oddPrimesUpTo(MathTool.isqrt(bound));
+        byte[] segment = new byte[SEGMENT_BYTES];
+        for (int byteLow = 0; byteLow < byteCount; byteLow += SEGMENT_BYTES) {
+            int length = Math.min(SEGMENT_BYTES, byteCount - byteLow);
+            WheelSieveOfEratosthenes.sieveSegment(basePrimes, byteLow, length, segment);
+            for (int i = 0; i < length; i++) {
+                bits[(byteLow + i) >>> 3] |= (long) (~segment[i] & 0xFF) << ((i & 7) << 3);
+            }
+        }
+        long limit = bitsUpTo(bound);
+        bits[(int) (limit >>> 6)] &= (1L << limit) - 1;
+        for (int word = (int) (limit >>> 6) + 1; word < bits.length; word++) {
+            bits[word] = 0;
+        }
+
+        this.rank = new int[blockCount + 2];
+        int primes = 0;
+        for (int block = 0; block <= blockCount; block++) {
+            rank[block] = primes;
+            for (int word = block * WORDS_PER_BLOCK; word < (block + 1) * WORDS_PER_BLOCK; word++) {
+                primes += Long.bitCount(bits[word]);
+            }
+        }
+        rank[blockCount + 1] = primes;
+        this.count = bound < 7 ? wheelPrimesUpTo(bound) : Integer.toUnsignedLong(primes) + 3;
+
+        this.select = new int[(primes + SELECT_SAMPLE - 1) / SELECT_SAMPLE];
+        for (int block = 0, i = 0; i < select.length; i++) {
+            while(rank[block + 1] <= i * SELECT_SAMPLE) block++;
+            select[i] = block;
+        }
+    }
+
+    /**
+     * @return the bound of the table, all queries are answered for numbers up to it
+     */
+    public long getBound() {
+        return bound;
+    }
+
+    /**
+     * @return the number of primes <= bound
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     *
+     * @param n number to test
+     * @return true if n is a prime
+     * @throws IllegalArgumentException if n exceeds the bound
+     */
+    public boolean isPrime(long n) {
+        checkBound(n);
+        if(n <= 5) return n == 2 || n == 3 || n == 5;
+        int bit = WheelSieveOfEratosthenes.BIT_OF_RESIDUE[(int) (n % 30)];
+        if(bit < 0) return false;
+        long index = 8 * (n / 30) + bit;
+        return (bits[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * prime counting function
+     *
+     * @param n upper bound (inclusive)
+     * @return the number of primes <= n
+     * @throws IllegalArgumentException if n exceeds the bound
+     */
+    public long pi(long n) {
+        checkBound(n);
+        if(n < 7) return wheelPrimesUpTo(n);
+        return rank(bitsUpTo(n)) + 3;
+    }
+
+    /**
+     *
+     * @param k the position of the prime, starting with nthPrime(1) = 2
+     * @return the k-th prime
+     * @throws IllegalArgumentException if k is not in [1,size()]
+     */
+    public long nthPrime(long k) {
+        if(k < 1 || k > count) throw new IllegalArgumentException("the table contains " + count + " primes");
+        if(k <= 3) return k == 1 ? 2 : k == 2 ? 3 : 5;
+        long index = select(k - 4);
+        return 30 * (index >>> 3) + WheelSieveOfEratosthenes.RESIDUES[(int) (index & 7)];
+    }
+
+    /**
+     *
+     * @param n any number < bound
+     * @return the smallest prime > n
+     * @throws IllegalArgumentException if there is no such prime <= bound
+     */
+    public long nextPrime(long n) {
+        if(n < 2) return 2;
+        long k = pi(n) + 1;
+        if(k > count) throw new IllegalArgumentException("next prime beyond the bound of the table");
+        return nthPrime(k);
+    }
+
+    /**
+     *
+     * @param n any number in (2,bound+1]
+     * @return the largest prime < n
+     * @throws IllegalArgumentException if n <= 2 or n-1 exceeds the bound
+     */
+    public long prevPrime(long n) {
+        if(n <= 2) throw new IllegalArgumentException("there is no prime below " + n);
+        return nthPrime(pi(n - 1));
+    }
+
+    private void checkBound(long n) {
+        if(n > bound) throw new IllegalArgumentException("the table only covers numbers up to " + bound);
+    }
+
+    /**
+     * @return number of set bits in [0,limit)
+     */
+    private long rank(long limit) {
+        int word = (int) (limit >>> 6);
+        int block = word / WORDS_PER_BLOCK;
+        long result = Integer.toUnsignedLong(rank[block]);
+        for (int i = block * WORDS_PER_BLOCK; i < word; i++) {
+            result += Long.bitCount(bits[i]);
+        }
+        return result + Long.bitCount(bits[word] & ((1L << limit) - 1));
+    }
+
+    /**
+     * @return the bit index of the set bit with rank k (0 based)
+     */
+    private long select(long k) {
+        int block = select[(int) (k / SELECT_SAMPLE)];
+        while(Integer.toUnsignedLong(rank[block + 1]) <= k) block++;
+        long remaining = k - Integer.toUnsignedLong(rank[block]);
+        int word = block * WORDS_PER_BLOCK;
+        int ones = Long.bitCount(bits[word]);
+        while(remaining >= ones) {
+            remaining -= ones;
+            ones = Long.bitCount(bits[++word]);
+        }
+        long w = bits[word];
+        for (long i = 0; i < remaining; i++) {
+            w &= w - 1;
+        }
+        return 64L * word + Long.numberOfTrailingZeros(w);
+    }
+
+    /**
+     * @return the number of primes 2, 3 and 5 which are <= n
+     */
+    private static int wheelPrimesUpTo(long n) {
+        return n < 2 ? 0 : n < 3 ? 1 : n < 5 ? 2 : 3;
+    }
+
+    /**
+     * @return the number of wheel positions <= n, i.e. the bit index after n
+     */
+    private static long bitsUpTo(long n) {
+        return 8 * (n / 30) + RESIDUES_UP_TO[(int) (n % 30)];
+    }
+
+    @Override
+    public String toString() {
+        return "PrimeTable{" +
+                "bound=" + bound +
+                ", size=" + count +
+                '}';
+    }
+
+    /**
+     * sieves all primes up to bound and builds the table
+     *
+     * @param bound upper bound (inclusive), at most 2^32
+     * @return the table
+     * @throws IllegalArgumentException if bound is negative or bigger than 2^32
+     */
+    public static PrimeTable getInstance(long bound) {
+        if(bound < 0 || bound > MAX_BOUND) throw new IllegalArgumentException("bound must be in [0,2^32]");
+        return new PrimeTable(bound);
+    }
+}
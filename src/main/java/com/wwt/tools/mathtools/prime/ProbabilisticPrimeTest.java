@@ -14,6 +14,8 @@
  */
 package com.wwt.tools.mathtools.prime;
 
+import java.math.BigInteger;
+
 /**
  * interface for probabilistic prime test algorithms
  *
@@ -28,4 +30,17 @@ public interface ProbabilisticPrimeTest {
      * @return true if number is probable prime, false if it is for sure not prime
      */
     boolean isPrime(long numberToTest,int iterations);
+
+    /**
+     * arbitrary precision version, by default only numbers which fit into a long are supported
+     *
+     * @param numberToTest the input number which should be tested if it is prime
+     * @param iterations number of tests (increases probability)
+     * @return true if number is probable prime, false if it is for sure not prime
+     * @throws IllegalArgumentException if the implementation does not support numbers of this size
+     */
+    default boolean isPrime(BigInteger numberToTest, int iterations) {
+        if(numberToTest.bitLength() > 63) throw new IllegalArgumentException("number too big for " + this);
+        return isPrime(numberToTest.longValue(), iterations);
+    }
 }
@@ -0,0 +1,804 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Self initializing quadratic sieve (SIQS). For a = q_1*...*q_s with factor base primes q_l all 2^(s-1) polynomials
+ * g(x) = ((a*x+b)^2-k*n)/a are sieved, switching from one b to the next in gray code order only adds or subtracts
+ * precomputed values to the roots of each prime. The interval [-M,M) is sieved in blocks of BLOCK_SIZE bytes which fit
+ * into the L1 cache, every worker owns its block and polynomial state, so relation collection scales with the number
+ * of workers of the pool. Candidates are trial divided by the primes whose roots hit the position, a rest below
+ * lpMultiplier*pmax is a large prime and two partial relations with the same large prime are combined to a full one.
+ * The dependencies of the exponent vectors modulo 2 are found by gaussian elimination on bit packed rows, each
+ * dependency gives a congruence of squares X^2 = Y^2 mod n and a factor gcd(X-Y,n) with probability 1/2.
+ * The multiplier k is chosen by the Knuth-Schroeppel function. A listener receives the relation counts and the
+ * throughput about once per second. Suited for 40 to 100 digits, above that the memory of the dense elimination
+ * (about 100 MB at 100 digits) is the limit.
+ * Small factors are removed by trial division first, cofactors below 64 bits are left to PollardRhoFactorization.
+ *
+ * @author benw@wwt
+ */
+public final class QuadraticSieveFactorization implements BigFactorizationAlgorithm {
+
+    /** bytes per sieve block, the size of a typical L1 data cache */
+    private static final int BLOCK_SIZE = 1 << 15;
+    /** primes below this bound are not sieved, their contribution is covered by the threshold */
+    private static final int SIEVE_PRIME_LIMIT = 16;
+    /** {bits of n, factor base size, blocks per half interval, large prime multiplier}, interpolated linearly */
+    private static final int[][] PARAMETERS = {
+            {64, 100, 1, 30},
+            {100, 200, 1, 30},
+            {130, 450, 1, 40},
+            {160, 900, 2, 40},
+            {190, 2200, 2, 50},
+            {220, 4200, 3, 60},
+            {250, 7800, 5, 80},
+            {280, 12000, 6, 100},
+            {310, 16000, 8, 120},
+            {340, 22000, 10, 150}};
+    /** square free multipliers tried by the Knuth-Schroeppel function */
+    private static final int[] MULTIPLIERS = {1, 2, 3, 5, 6, 7, 10, 11, 13, 14, 15, 17, 19, 21, 22, 23, 26, 29, 30, 31,
+            33, 34, 35, 37, 38, 39, 41, 42, 43, 46, 47, 51, 53, 55, 57, 58, 59, 61, 62, 65, 66, 67, 69, 70, 71, 73};
+    /** relations beyond the factor base size, each one more dependency */
+    private static final int EXTRA_RELATIONS = 64;
+    /** the threshold allows rests up to pmax^THRESHOLD_EXPONENT */
+    private static final double THRESHOLD_EXPONENT = 1.9;
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final ForkJoinPool pool;
+    private final Consumer<Progress> progressListener;
+    private final ModularArithmetic modularArithmetic = ModularArithmetic.getInstance(IterativeGCDAlgorithm.getInstance());
+
+    private QuadraticSieveFactorization(ForkJoinPool pool, Consumer<Progress> progressListener) {
+        this.pool = pool;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    @Override
+    public List<BigInteger> factorize(final BigInteger number) {
+        return BigFactorSplitter.factorize(number, n -> {
+            BigInteger divisor = findFactor(n);
+            // the rare case that all dependencies are trivial
+            return divisor != null ? divisor : EllipticCurveFactorization.getInstance(pool).findDivisor(n);
+        });
+    }
+
+    /**
+     * runs the quadratic sieve once
+     *
+     * @param n odd composite number with at least 64 bits, no perfect power
+     * @return a non trivial factor of n or null if all dependencies were trivial
+     * @throws IllegalArgumentException if n is even or has less than 64 bits
+     */
+    public BigInteger findFactor(BigInteger n) {
+        if(!n.testBit(0)) throw new IllegalArgumentException("n must be odd");
+        if(n.bitLength() < 64) throw new IllegalArgumentException("n must have at least 64 bits");
+        int bits = n.bitLength();
+        int factorBaseSize = (int) interpolate(bits, 1);
+        int blocks = (int) Math.round(interpolate(bits, 2));
+        int largePrimeMultiplier = (int) interpolate(bits, 3);
+        int multiplier = chooseMultiplier(n);
+        BigInteger kn = n.multiply(BigInteger.valueOf(multiplier));
+        FactorBase factorBase = new FactorBase(n, kn, multiplier, factorBaseSize);
+        if(factorBase.divisor != null) return factorBase.divisor;
+
+        Relations relations = new Relations(factorBase.size + 1 + EXTRA_RELATIONS,
+                (long) factorBase.primes[factorBase.size] * largePrimeMultiplier);
+        if(pool == null) {
+            new PolynomialSieve(n, kn, factorBase, blocks * BLOCK_SIZE, relations).run();
+        }
+        else {
+            List<ForkJoinTask<?>> workers = new ArrayList<>();
+            for (int i = 0; i < pool.getParallelism(); i++) {
+                workers.add(pool.submit(new PolynomialSieve(n, kn, factorBase, blocks * BLOCK_SIZE, relations)));
+            }
+            for (ForkJoinTask<?> worker : workers) {
+                worker.join();
+            }
+        }
+        relations.report(true);
+        return solve(n, factorBase, relations.getRelations());
+    }
+
+    private static double interpolate(int bits, int column) {
+        int row = 0;
+        while(row < PARAMETERS.length - 1 && PARAMETERS[row + 1][0] < bits) {
+            row++;
+        }
+        if(row == PARAMETERS.length - 1 || bits <= PARAMETERS[0][0]) return PARAMETERS[row][column];
+        double t = (bits - PARAMETERS[row][0]) / (double) (PARAMETERS[row + 1][0] - PARAMETERS[row][0]);
+        return PARAMETERS[row][column] + t * (PARAMETERS[row + 1][column] - PARAMETERS[row][column]);
+    }
+
+    /**
+     * Knuth-Schroeppel: the multiplier maximizing the expected contribution of the small primes to Q(x)
+     */
+    private int chooseMultiplier(BigInteger n) {
+        PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence(2000);
+        int best = 1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int k : MULTIPLIERS) {
+            BigInteger kn = n.multiply(BigInteger.valueOf(k));
+            double value = -0.5 * Math.log(k);
+            int mod8 = kn.intValue() & 7;
+            value += mod8 == 1 ? 2 * Math.log(2) : mod8 == 5 ? Math.log(2) : 0.5 * Math.log(2);
+            for (int i = 1; i < primes.size(); i++) {
+                int p = primes.getInt(i);
+                if(k % p == 0) {
+                    value += Math.log(p) / p;
+                }
+                else if(modularArithmetic.jacobiSymbol(kn.mod(BigInteger.valueOf(p)).longValue(), p) == 1) {
+                    value += 2 * Math.log(p) / (p - 1);
+                }
+            }
+            if(value > bestValue) {
+                bestValue = value;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * the primes p with (kn/p) != -1, index 0 stands for the sign
+     */
+    private final class FactorBase {
+        private final int size;
+        private final int[] primes;
+        /** square root of kn modulo the prime */
+        private final int[] roots;
+        /** rounded log2 of the prime */
+        private final byte[] logarithms;
+        /** a factor base prime dividing n, null if there is none */
+        private final BigInteger divisor;
+
+        private FactorBase(BigInteger n, BigInteger kn, int multiplier, int size) {
+            this.size = size;
+            this.primes = new int[size + 1];
+            this.roots = new int[size + 1];
+            this.logarithms = new byte[size + 1];
+            primes[0] = -1;
+            BigInteger foundDivisor = null;
+            int count = 0;
+            PrimeIterator iterator = PrimeIterator.getInstance();
+            while(count < size) {
+                int p = (int) iterator.nextLong();
+                long residue = kn.mod(BigInteger.valueOf(p)).longValue();
+                if(p != 2 && multiplier % p != 0 && n.mod(BigInteger.valueOf(p)).signum() == 0) {
+                    foundDivisor = BigInteger.valueOf(p);
+                }
+                if(p == 2 || residue == 0 || modularArithmetic.jacobiSymbol(residue, p) == 1) {
+                    count++;
+                    primes[count] = p;
+                    roots[count] = (int) modularArithmetic.squareRoot(residue, p);
+                    logarithms[count] = (byte) Math.round(Math.log(p) / Math.log(2));
+                }
+            }
+            this.divisor = foundDivisor;
+        }
+
+        /**
+         * @return true if the prime at index has two distinct roots and is sieved
+         */
+        private boolean isSieved(int index) {
+            return primes[index] >= SIEVE_PRIME_LIMIT && roots[index] != 0;
+        }
+    }
+
+    /**
+     * (a*x+b)^2 = product of the factor base primes at the indices (with repetitions) times largePrime^2 mod n
+     */
+    private static final class Relation {
+        private final BigInteger y;
+        private final int[] factors;
+        /** large prime contained twice, 1 for a relation without large prime */
+        private final long largePrime;
+
+        private Relation(BigInteger y, int[] factors, long largePrime) {
+            this.y = y;
+            this.factors = factors;
+            this.largePrime = largePrime;
+        }
+    }
+
+    /**
+     * collects the relations of all workers
+     */
+    private final class Relations {
+        private final int required;
+        private final long largePrimeBound;
+        private final List<Relation> full = new ArrayList<>();
+        private final Map<Long, Relation> partials = new HashMap<>();
+        private final Set<BigInteger> usedA = new HashSet<>();
+        private final AtomicLong polynomials = new AtomicLong();
+        private final long start = System.nanoTime();
+        private int fullCount;
+        private int combinedCount;
+        private long lastReport = start;
+        private volatile boolean complete;
+
+        private Relations(int required, long largePrimeBound) {
+            this.required = required;
+            this.largePrimeBound = largePrimeBound;
+        }
+
+        private synchronized boolean reserve(BigInteger a) {
+            return usedA.add(a);
+        }
+
+        private void addFull(Relation relation) {
+            Progress progress;
+            synchronized (this) {
+                if(complete) return;
+                full.add(relation);
+                fullCount++;
+                progress = update();
+            }
+            publish(progress);
+        }
+
+        private void addPartial(BigInteger n, Relation relation) {
+            Progress progress;
+            synchronized (this) {
+                if(complete) return;
+                Relation other = partials.putIfAbsent(relation.largePrime, relation);
+                if(other == null) return;
+                int[] factors = Arrays.copyOf(other.factors, other.factors.length + relation.factors.length);
+                System.arraycopy(relation.factors, 0, factors, other.factors.length, relation.factors.length);
+                full.add(new Relation(other.y.multiply(relation.y).mod(n), factors, relation.largePrime));
+                combinedCount++;
+                progress = update();
+            }
+            publish(progress);
+        }
+
+        /**
+         * called with the monitor held
+         *
+         * @return the progress to publish, null if it is not yet time for a report
+         */
+        private Progress update() {
+            complete = full.size() >= required;
+            return snapshot(false);
+        }
+
+        private void report(boolean last) {
+            Progress progress;
+            synchronized (this) {
+                progress = snapshot(last);
+            }
+            publish(progress);
+        }
+
+        /**
+         * called with the monitor held
+         *
+         * @return the current progress, null if there is no listener or the last report is too recent
+         */
+        private Progress snapshot(boolean last) {
+            long now = System.nanoTime();
+            if(progressListener == null) return null;
+            if(!last && now - lastReport < PROGRESS_INTERVAL_MILLIS * 1000000) return null;
+            lastReport = now;
+            return new Progress(fullCount, combinedCount, partials.size(), required, polynomials.get(),
+                    (now - start) / 1000000);
+        }
+
+        /**
+         * hands the progress to the listener outside of the monitor, so a slow listener does not stall the workers
+         */
+        private void publish(Progress progress) {
+            if(progress != null) progressListener.accept(progress);
+        }
+
+        private synchronized List<Relation> getRelations() {
+            return new ArrayList<>(full.subList(0, Math.min(full.size(), required)));
+        }
+    }
+
+    /**
+     * the sieve state of one worker
+     */
+    private final class PolynomialSieve implements Runnable {
+        private final BigInteger n;
+        private final BigInteger kn;
+        private final FactorBase factorBase;
+        /** half width of the sieve interval */
+        private final int m;
+        private final Relations relations;
+        private final byte[] sieve = new byte[BLOCK_SIZE];
+        private final int[] root1;
+        private final int[] root2;
+        private final int[] next1;
+        private final int[] next2;
+        private final int[] aInverse;
+        private final boolean[] dividesA;
+        /** the prime at the index is sieved for the current a */
+        private final boolean[] sieved;
+        private final int threshold;
+        private int collisions;
+
+        private PolynomialSieve(BigInteger n, BigInteger kn, FactorBase factorBase, int m, Relations relations) {
+            this.n = n;
+            this.kn = kn;
+            this.factorBase = factorBase;
+            this.m = m;
+            this.relations = relations;
+            int size = factorBase.size + 1;
+            this.root1 = new int[size];
+            this.root2 = new int[size];
+            this.next1 = new int[size];
+            this.next2 = new int[size];
+            this.aInverse = new int[size];
+            this.dividesA = new boolean[size];
+            this.sieved = new boolean[size];
+            // |g(x)| <= M*sqrt(kn/2), the unsieved small primes contribute about 4 bits
+            double logMaximum = Math.log(m) / Math.log(2) + (kn.bitLength() - 1) / 2.0;
+            double logPrime = Math.log(factorBase.primes[factorBase.size]) / Math.log(2);
+            this.threshold = (int) (logMaximum - THRESHOLD_EXPONENT * logPrime - 4);
+        }
+
+        @Override
+        public void run() {
+            while(!relations.complete) {
+                int[] q = chooseA();
+                if(q == null) continue;
+                sievePolynomials(q);
+            }
+        }
+
+        /**
+         * @return factor base indices of the primes q_l with a = q_1*...*q_s near sqrt(2kn)/M, null if a was used before
+         */
+        private int[] chooseA() {
+            double logTarget = (kn.bitLength() + 1) / 2.0 * Math.log(2) - Math.log(m);
+            int size = factorBase.size;
+            int[] primes = factorBase.primes;
+            // the q_l are about (sqrt(2kn)/M)^(1/s) and below the primes of the upper third of the factor base
+            int s = Math.max(1, (int) Math.ceil(logTarget / Math.log(primes[2 * size / 3])));
+            double logPrime = logTarget / s;
+            int center = 1;
+            while(center < size && (primes[center] < SIEVE_PRIME_LIMIT || Math.log(primes[center]) < logPrime)) {
+                center++;
+            }
+            // each repeated a widens the window the q_l are drawn from
+            int width = Math.max(s + 4, size / 32) + collisions;
+            int low = Math.max(1, center - width);
+            int high = Math.min(size, center + width);
+            int[] q = new int[s];
+            double logA = 0;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int l = 0; l < s - 1; l++) {
+                int index;
+                do {
+                    index = random.nextInt(low, high + 1);
+                } while(!factorBase.isSieved(index) || contains(q, l, index));
+                q[l] = index;
+                logA += Math.log(primes[index]);
+            }
+            // the last q is the prime closest to the remaining target
+            double remaining = logTarget - logA;
+            int last = -1;
+            double bestDistance = Double.MAX_VALUE;
+            for (int index = 1; index <= size; index++) {
+                if(!factorBase.isSieved(index) || contains(q, s - 1, index)) continue;
+                double distance = Math.abs(Math.log(primes[index]) - remaining);
+                if(distance < bestDistance) {
+                    bestDistance = distance;
+                    last = index;
+                }
+            }
+            q[s - 1] = last;
+            BigInteger a = BigInteger.ONE;
+            for (int index : q) {
+                a = a.multiply(BigInteger.valueOf(primes[index]));
+            }
+            if(relations.reserve(a)) return q;
+            collisions++;
+            return null;
+        }
+
+        private boolean contains(int[] values, int length, int value) {
+            for (int i = 0; i < length; i++) {
+                if(values[i] == value) return true;
+            }
+            return false;
+        }
+
+        /**
+         * sieves all 2^(s-1) polynomials with the given a
+         */
+        private void sievePolynomials(int[] q) {
+            int s = q.length;
+            int size = factorBase.size;
+            int[] primes = factorBase.primes;
+            BigInteger a = BigInteger.ONE;
+            for (int index : q) {
+                a = a.multiply(BigInteger.valueOf(primes[index]));
+            }
+            // B_l = a/q_l * (t_l * (a/q_l)^-1 mod q_l), b = sum of B_l satisfies b^2 = kn mod a
+            BigInteger[] bl = new BigInteger[s];
+            BigInteger b = BigInteger.ZERO;
+            for (int l = 0; l < s; l++) {
+                int ql = primes[q[l]];
+                BigInteger aDivQ = a.divide(BigInteger.valueOf(ql));
+                long gamma = factorBase.roots[q[l]] * modularArithmetic.inverse(aDivQ.mod(BigInteger.valueOf(ql)).longValue(), ql) % ql;
+                if(gamma > ql / 2) gamma = ql - gamma;
+                bl[l] = aDivQ.multiply(BigInteger.valueOf(gamma));
+                b = b.add(bl[l]);
+            }
+            Arrays.fill(dividesA, false);
+            for (int index : q) {
+                dividesA[index] = true;
+            }
+            for (int i = 1; i <= size; i++) {
+                sieved[i] = factorBase.isSieved(i) && !dividesA[i];
+            }
+            // 2*B_l*a^-1 mod p, the change of the roots when the sign of B_l flips
+            int[][] bAInverse = new int[s][size + 1];
+            for (int i = 1; i <= size; i++) {
+                if(!sieved[i]) continue;
+                int p = primes[i];
+                BigInteger pBig = BigInteger.valueOf(p);
+                long inverse = modularArithmetic.inverse(a.mod(pBig).longValue(), p);
+                aInverse[i] = (int) inverse;
+                for (int l = 0; l < s; l++) {
+                    bAInverse[l][i] = (int) (2 * bl[l].mod(pBig).longValue() * inverse % p);
+                }
+                long t = factorBase.roots[i];
+                long bModP = b.mod(pBig).longValue();
+                long offset = m % p;
+                root1[i] = (int) ((inverse * Math.floorMod(t - bModP, p) + offset) % p);
+                root2[i] = (int) ((inverse * Math.floorMod(-t - bModP, p) + offset) % p);
+            }
+            boolean[] negative = new boolean[s];
+            int polynomialCount = 1 << (s - 1);
+            for (int polynomial = 0; polynomial < polynomialCount && !relations.complete; polynomial++) {
+                if(polynomial > 0) {
+                    // gray code: flip the sign of B_v, the last B_l keeps its sign so that b and -b are not both used
+                    int v = Integer.numberOfTrailingZeros(polynomial);
+                    int[] delta = bAInverse[v];
+                    if(negative[v]) {
+                        b = b.add(bl[v].shiftLeft(1));
+                        for (int i = 1; i <= size; i++) {
+                            int p = primes[i];
+                            int r1 = root1[i] - delta[i];
+                            int r2 = root2[i] - delta[i];
+                            root1[i] = r1 < 0 ? r1 + p : r1;
+                            root2[i] = r2 < 0 ? r2 + p : r2;
+                        }
+                    }
+                    else {
+                        b = b.subtract(bl[v].shiftLeft(1));
+                        for (int i = 1; i <= size; i++) {
+                            int p = primes[i];
+                            int r1 = root1[i] + delta[i];
+                            int r2 = root2[i] + delta[i];
+                            root1[i] = r1 >= p ? r1 - p : r1;
+                            root2[i] = r2 >= p ? r2 - p : r2;
+                        }
+                    }
+                    negative[v] = !negative[v];
+                }
+                BigInteger c = b.multiply(b).subtract(kn).divide(a);
+                sieveInterval(a, b, c);
+                relations.polynomials.incrementAndGet();
+            }
+        }
+
+        /**
+         * sieves [-M,M) block by block and checks the candidates
+         */
+        private void sieveInterval(BigInteger a, BigInteger b, BigInteger c) {
+            int size = factorBase.size;
+            int[] primes = factorBase.primes;
+            byte[] logarithms = factorBase.logarithms;
+            for (int i = 1; i <= size; i++) {
+                next1[i] = root1[i];
+                next2[i] = root2[i];
+            }
+            for (int blockStart = 0; blockStart < 2 * m; blockStart += BLOCK_SIZE) {
+                Arrays.fill(sieve, (byte) 0);
+                int blockEnd = blockStart + BLOCK_SIZE;
+                for (int i = 1; i <= size; i++) {
+                    if(!sieved[i]) continue;
+                    int p = primes[i];
+                    byte logarithm = logarithms[i];
+                    int position = next1[i];
+                    for (; position < blockEnd; position += p) {
+                        sieve[position - blockStart] += logarithm;
+                    }
+                    next1[i] = position;
+                    position = next2[i];
+                    for (; position < blockEnd; position += p) {
+                        sieve[position - blockStart] += logarithm;
+                    }
+                    next2[i] = position;
+                }
+                for (int offset = 0; offset < BLOCK_SIZE; offset++) {
+                    if((sieve[offset] & 0xFF) >= threshold) {
+                        checkCandidate(a, b, c, blockStart + offset);
+                    }
+                }
+            }
+        }
+
+        /**
+         * trial divides g(x) = a*x^2+2*b*x+c for x = position-M
+         */
+        private void checkCandidate(BigInteger a, BigInteger b, BigInteger c, int position) {
+            int size = factorBase.size;
+            int[] primes = factorBase.primes;
+            BigInteger x = BigInteger.valueOf(position - m);
+            BigInteger g = a.multiply(x).add(b.shiftLeft(1)).multiply(x).add(c);
+            int[] factors = new int[16];
+            int count = 0;
+            if(g.signum() < 0) {
+                factors[count++] = 0;
+                g = g.negate();
+            }
+            if(g.signum() == 0) return;
+            for (int i = 1; i <= size; i++) {
+                int p = primes[i];
+                boolean hit;
+                if(sieved[i]) {
+                    int residue = position % p;
+                    hit = residue == root1[i] || residue == root2[i];
+                }
+                else {
+                    hit = g.mod(BigInteger.valueOf(p)).signum() == 0;
+                }
+                if(!hit) continue;
+                BigInteger pBig = BigInteger.valueOf(p);
+                BigInteger[] quotientAndRemainder = g.divideAndRemainder(pBig);
+                while(quotientAndRemainder[1].signum() == 0) {
+                    if(count == factors.length) factors = Arrays.copyOf(factors, 2 * count);
+                    factors[count++] = i;
+                    g = quotientAndRemainder[0];
+                    quotientAndRemainder = g.divideAndRemainder(pBig);
+                }
+            }
+            if(g.bitLength() > 62) return;
+            long rest = g.longValue();
+            if(rest != 1 && rest >= relations.largePrimeBound) return;
+            // Q(x) = a*g(x), a contributes each q_l once
+            int[] all = Arrays.copyOf(factors, count + size + 1);
+            for (int i = 1; i <= size; i++) {
+                if(dividesA[i]) all[count++] = i;
+            }
+            Relation relation = new Relation(a.multiply(x).add(b), Arrays.copyOf(all, count), rest);
+            if(rest == 1) relations.addFull(relation);
+            else relations.addPartial(n, relation);
+        }
+    }
+
+    /**
+     * gaussian elimination modulo 2 and the square roots of the dependencies
+     *
+     * @return a non trivial factor of n or null
+     */
+    private BigInteger solve(BigInteger n, FactorBase factorBase, List<Relation> relations) {
+        int columns = factorBase.size + 1;
+        int rows = relations.size();
+        int primeWords = (columns + 63) >>> 6;
+        int words = primeWords + ((rows + 63) >>> 6);
+        // row r: exponent vector modulo 2 of relation r followed by the identity, which tracks the combination
+        long[][] matrix = new long[rows][words];
+        for (int r = 0; r < rows; r++) {
+            for (int index : relations.get(r).factors) {
+                matrix[r][index >>> 6] ^= 1L << index;
+            }
+            matrix[r][primeWords + (r >>> 6)] |= 1L << r;
+        }
+        boolean[] pivot = new boolean[rows];
+        for (int column = 0; column < columns; column++) {
+            int word = column >>> 6;
+            long bit = 1L << column;
+            int pivotRow = -1;
+            for (int r = 0; r < rows; r++) {
+                if(!pivot[r] && (matrix[r][word] & bit) != 0) {
+                    pivotRow = r;
+                    break;
+                }
+            }
+            if(pivotRow < 0) continue;
+            pivot[pivotRow] = true;
+            long[] pivotValues = matrix[pivotRow];
+            for (int r = 0; r < rows; r++) {
+                if(r != pivotRow && (matrix[r][word] & bit) != 0) {
+                    long[] row = matrix[r];
+                    for (int w = word; w < words; w++) {
+                        row[w] ^= pivotValues[w];
+                    }
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            if(pivot[r]) continue;
+            BigInteger factor = squareRoot(n, factorBase, relations, matrix[r], primeWords);
+            if(factor != null) return factor;
+        }
+        return null;
+    }
+
+    /**
+     * @return gcd(X-Y,n) for the dependency if it is a non trivial factor, null otherwise
+     */
+    private BigInteger squareRoot(BigInteger n, FactorBase factorBase, List<Relation> relations, long[] dependency,
+                                  int primeWords) {
+        int[] exponents = new int[factorBase.size + 1];
+        BigInteger x = BigInteger.ONE;
+        BigInteger y = BigInteger.ONE;
+        for (int r = 0; r < relations.size(); r++) {
+            if((dependency[primeWords + (r >>> 6)] & (1L << r)) == 0) continue;
+            Relation relation = relations.get(r);
+            x = x.multiply(relation.y).mod(n);
+            y = y.multiply(BigInteger.valueOf(relation.largePrime)).mod(n);
+            for (int index : relation.factors) {
+                exponents[index]++;
+            }
+        }
+        for (int i = 1; i < exponents.length; i++) {
+            if(exponents[i] != 0) {
+                BigInteger p = BigInteger.valueOf(factorBase.primes[i]);
+                y = y.multiply(p.modPow(BigInteger.valueOf(exponents[i] / 2), n)).mod(n);
+            }
+        }
+        for (BigInteger candidate : new BigInteger[]{x.subtract(y).gcd(n), x.add(y).gcd(n)}) {
+            if(!candidate.equals(BigInteger.ONE) && !candidate.equals(n)) return candidate;
+        }
+        return null;
+    }
+
+    /**
+     * state of the relation collection, handed to the progress listener
+     */
+    public static final class Progress {
+        private final int fullRelations;
+        private final int combinedRelations;
+        private final int partialRelations;
+        private final int requiredRelations;
+        private final long polynomials;
+        private final long elapsedMillis;
+
+        private Progress(int fullRelations, int combinedRelations, int partialRelations, int requiredRelations,
+                         long polynomials, long elapsedMillis) {
+            this.fullRelations = fullRelations;
+            this.combinedRelations = combinedRelations;
+            this.partialRelations = partialRelations;
+            this.requiredRelations = requiredRelations;
+            this.polynomials = polynomials;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return relations without large prime
+         */
+        public int getFullRelations() {
+            return fullRelations;
+        }
+
+        /**
+         * @return relations combined from two partial relations with the same large prime
+         */
+        public int getCombinedRelations() {
+            return combinedRelations;
+        }
+
+        /**
+         * @return partial relations waiting for a second one with the same large prime
+         */
+        public int getPartialRelations() {
+            return partialRelations;
+        }
+
+        /**
+         * @return number of full and combined relations needed for the linear algebra
+         */
+        public int getRequiredRelations() {
+            return requiredRelations;
+        }
+
+        /**
+         * @return number of sieved polynomials
+         */
+        public long getPolynomials() {
+            return polynomials;
+        }
+
+        /**
+         * @return time since the start of the relation collection
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return full and combined relations per second
+         */
+        public double getRelationsPerSecond() {
+            return elapsedMillis == 0 ? 0 : 1000.0 * (fullRelations + combinedRelations) / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "fullRelations=" + fullRelations +
+                    ", combinedRelations=" + combinedRelations +
+                    ", partialRelations=" + partialRelations +
+                    ", requiredRelations=" + requiredRelations +
+                    ", polynomials=" + polynomials +
+                    ", elapsedMillis=" + elapsedMillis +
+                    '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QuadraticSieveFactorization{" +
+                "pool=" + pool +
+                '}';
+    }
+
+    /**
+     *
+     * @return QuadraticSieveFactorization sieving in the calling thread
+     */
+    public static QuadraticSieveFactorization getInstance() {
+        return new QuadraticSieveFactorization(null, null);
+    }
+
+    /**
+     *
+     * @param pool pool whose workers collect relations
+     * @return QuadraticSieveFactorization sieving in parallel
+     */
+    public static QuadraticSieveFactorization getInstance(ForkJoinPool pool) {
+        return new QuadraticSieveFactorization(pool, null);
+    }
+
+    /**
+     *
+     * @param pool pool whose workers collect relations, null to sieve in the calling thread
+     * @param progressListener receives the state of the relation collection about once per second and at its end. It
+     *                         is called from the sieving workers (the pool threads, or the calling thread without a
+     *                         pool) and at the end from the thread running findFactor; calls from different workers
+     *                         may overlap, so the listener must be thread safe
+     * @return QuadraticSieveFactorization reporting its progress
+     */
+    public static QuadraticSieveFactorization getInstance(ForkJoinPool pool, Consumer<Progress> progressListener) {
+        return new QuadraticSieveFactorization(pool, progressListener);
+    }
+}
@@ -0,0 +1,341 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Factorization of all numbers of a range [lowerBound,upperBound] by a segmented sieve. Each number of a segment owns
+ * a row of ROW_LENGTH longs, two cache lines, holding its unfactored rest and the prime factors found so far as
+ * prime*2^8+exponent. The factor 2 is taken from the trailing zeros, each odd base prime p up to sqrt of the segment's
+ * upper end visits only its multiples and divides them as often as possible. These divisions are exact, so they are
+ * replaced by a multiplication with the inverse of p modulo 2^64 which also tests the next division. The rest left at
+ * the end is 1 or a prime. A long has at most 15 distinct prime factors, so 15 entries always suffice.
+ * The base primes up to 2^20 are computed once per call, the bigger ones are streamed per segment by
+ * SegmentedSieveOfEratosthenes and not kept. A segment whose root exceeds SIEVE_ROOT_FACTOR times its length would
+ * cost more than factorizing its numbers one by one, those are factorized by HybridFactorization instead, so short
+ * ranges of big numbers are not slower than the per number algorithms. Segments are about sqrt(upperBound) numbers,
+ * but at least MIN_SEGMENT_SIZE and at most MAX_SEGMENT_SIZE. Segments run on an executor if there is one and are
+ * handed to the consumer in ascending order from the calling thread.
+ *
+ * @author benw@wwt
+ */
+public final class SegmentedFactorSieve {
+
+    private static final int MIN_SEGMENT_SIZE = 1 << 12;
+    private static final int MAX_SEGMENT_SIZE = 1 << 16;
+    /** the rest followed by up to 15 factor entries */
+    private static final int ROW_LENGTH = 16;
+    /** 2^k > Long.MAX_VALUE, no long has more prime factors */
+    private static final int MAX_FACTORS = 63;
+    /** base primes up to this bound are computed once per call and kept, about 82000 primes in 1.6 MB */
+    private static final int CACHED_BASE_PRIME_BOUND = 1 << 20;
+    /**
+     * a segment is sieved if sqrt of its upper end is at most this multiple of its length, otherwise its numbers are
+     * factorized one by one, which is faster for short segments of big numbers
+     */
+    private static final int SIEVE_ROOT_FACTOR = 1 << 12;
+
+    private static class SegmentedFactorSieveHolder {
+        private static final SegmentedFactorSieve INSTANCE = new SegmentedFactorSieve(null, 1);
+    }
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    private SegmentedFactorSieve(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * hands the factorization of every number in [lowerBound,upperBound] in ascending order to the consumer, the
+     * consumer is called from the calling thread only. The memory does not depend on the size of the numbers: at most
+     * 2*parallelism segment buffers of 8 MB (one without executor), 1.6 MB for the base primes up to 2^20 and about
+     * 100 KB per running segment for streaming the bigger base primes.
+     *
+     * @param lowerBound lower bound (inclusive), at least 1
+     * @param upperBound upper bound (inclusive)
+     * @param consumer receives the factorizations, the factor array is reused
+     * @throws IllegalArgumentException if lowerBound is < 1
+     */
+    public void factorize(long lowerBound, long upperBound, FactorizationConsumer consumer) {
+        if(lowerBound < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
+        if(lowerBound > upperBound) return;
+        int segmentSize = segmentSize(upperBound);
+        BasePrimes basePrimes = new BasePrimes(Math.min(MathTool.isqrt(upperBound), CACHED_BASE_PRIME_BOUND));
+        long[] factors = new long[MAX_FACTORS];
+        if(executor == null) {
+            long[] rows = new long[segmentSize * ROW_LENGTH];
+            long low = lowerBound;
+            while(true) {
+                long high = segmentHigh(low, upperBound, segmentSize);
+                factorSegment(basePrimes, low, high, rows).emit(consumer, factors);
+                if(high == upperBound) return;
+                low = high + 1;
+            }
+        }
+        // the buffers are taken and returned by the calling thread only
+        ArrayDeque<long[]> buffers = new ArrayDeque<>();
+        ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+        try {
+            long next = lowerBound;
+            boolean submittedAll = false;
+            while(!submittedAll || !pending.isEmpty()) {
+                while(!submittedAll && pending.size() < 2 * parallelism) {
+                    long low = next;
+                    long high = segmentHigh(low, upperBound, segmentSize);
+                    long[] rows = buffers.isEmpty() ? new long[segmentSize * ROW_LENGTH] : buffers.poll();
+                    pending.add(executor.submit(() -> factorSegment(basePrimes, low, high, rows)));
+                    submittedAll = high == upperBound;
+                    next = high + 1;
+                }
+                Segment segment = await(pending.poll());
+                segment.emit(consumer, factors);
+                buffers.add(segment.rows);
+            }
+        }
+        finally {
+            for (Future<Segment> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * about sqrt(upperBound) numbers, rounded to a power of two
+     */
+    private static int segmentSize(long upperBound) {
+        long root = MathTool.isqrt(upperBound);
+        return (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, Long.highestOneBit(root)));
+    }
+
+    private static long segmentHigh(long low, long upperBound, int segmentSize) {
+        return upperBound - low < segmentSize - 1 ? upperBound : low + segmentSize - 1;
+    }
+
+    /**
+     * @param basePrimes odd primes up to at least sqrt(high)
+     * @param rows buffer of at least (high-low+1)*ROW_LENGTH longs, overwritten
+     * @return the factorizations of [low,high]
+     */
+    private static Segment factorSegment(BasePrimes basePrimes, long low, long high, long[] rows) {
+        int count = (int) (high - low + 1);
+        Arrays.fill(rows, 0, count * ROW_LENGTH, 0);
+        if(MathTool.isqrt(high) > (long) count * SIEVE_ROOT_FACTOR) {
+            // every number would cost more than SIEVE_ROOT_FACTOR base primes
+            factorEach(low, count, rows);
+            return new Segment(low, count, rows);
+        }
+        for (int i = 0; i < count; i++) {
+            rows[i * ROW_LENGTH] = low + i;
+        }
+        for (int i = (int) (low & 1); i < count; i += 2) {
+            int row = i * ROW_LENGTH;
+            int twos = Long.numberOfTrailingZeros(rows[row]);
+            rows[row] >>>= twos;
+            rows[row + 1] = 2L << 8 | twos;
+        }
+        int[] primes = basePrimes.primes;
+        long[] inverses = basePrimes.inverses;
+        long[] limits = basePrimes.limits;
+        for (int k = 0; k < primes.length; k++) {
+            long p = Integer.toUnsignedLong(primes[k]);
+            if(p > high / p) break;
+            divideMultiples(p, inverses[k], limits[k], low, count, rows);
+        }
+        long root = MathTool.isqrt(high);
+        if(root > basePrimes.bound) {
+            // the bigger base primes are streamed by a segmented sieve and not kept
+            SegmentedSieveOfEratosthenes.getInstance().sieve(basePrimes.bound + 1, root,
+                    p -> divideMultiples(p, inverse(p), Long.divideUnsigned(-1L, p), low, count, rows));
+        }
+        return new Segment(low, count, rows);
+    }
+
+    /**
+     * divides the numbers of the segment by the odd prime p as often as possible and adds the factor entries
+     *
+     * @param inverse p^-1 mod 2^64
+     * @param limit n*inverse is at most this limit as unsigned long if and only if p divides n
+     */
+    private static void divideMultiples(long p, long inverse, long limit, long low, int count, long[] rows) {
+        long remainder = low % p;
+        for (long i = remainder == 0 ? 0 : p - remainder; i < count; i += p) {
+            int row = (int) i * ROW_LENGTH;
+            long r = rows[row];
+            int exponent = 0;
+            do {
+                r *= inverse;
+                exponent++;
+            } while(Long.compareUnsigned(r * inverse, limit) <= 0);
+            rows[row] = r;
+            int entry = row + 1;
+            while(rows[entry] != 0) {
+                entry++;
+            }
+            rows[entry] = p << 8 | exponent;
+        }
+    }
+
+    /**
+     * @param p odd number
+     * @return p^-1 mod 2^64
+     */
+    private static long inverse(long p) {
+        // newton iteration, each step doubles the correct bits of p^-1 mod 2^64
+        long x = p;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - p * x;
+        }
+        return x;
+    }
+
+    /**
+     * fills the rows of [low,low+count) by factorizing each number on its own
+     */
+    private static void factorEach(long low, int count, long[] rows) {
+        HybridFactorization factorization = HybridFactorization.getInstance();
+        for (int i = 0; i < count; i++) {
+            int row = i * ROW_LENGTH;
+            rows[row] = 1;
+            List<Long> primeFactors = factorization.factorize(low + i);
+            int entry = row + 1;
+            for (int j = 0; j < primeFactors.size(); ) {
+                long prime = primeFactors.get(j);
+                int exponent = 0;
+                while(j < primeFactors.size() && primeFactors.get(j) == prime) {
+                    exponent++;
+                    j++;
+                }
+                // the largest prime may not fit into an entry, it is the rest like in the sieve
+                if(j == primeFactors.size() && exponent == 1) rows[row] = prime;
+                else rows[entry++] = prime << 8 | exponent;
+            }
+        }
+    }
+
+    private static Segment await(Future<Segment> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while sieving", e);
+        }
+        catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * the odd primes up to a bound with their inverses modulo 2^64 and the divisibility limits
+     */
+    private static final class BasePrimes {
+        private final long bound;
+        /** odd primes as unsigned ints */
+        private final int[] primes;
+        private final long[] inverses;
+        /** n*inverse is at most this limit as unsigned long if and only if the prime divides n */
+        private final long[] limits;
+
+        private BasePrimes(long bound) {
+            this.bound = bound;
+            primes = SegmentedSieveOfEratosthenes.oddPrimesUpTo(bound);
+            inverses = new long[primes.length];
+            limits = new long[primes.length];
+            for (int k = 0; k < primes.length; k++) {
+                long p = Integer.toUnsignedLong(primes[k]);
+                inverses[k] = inverse(p);
+                limits[k] = Long.divideUnsigned(-1L, p);
+            }
+        }
+    }
+
+    /**
+     * factorizations of the numbers low, low+1, ..., row i holds the rest and the factor entries of low+i
+     */
+    private static final class Segment {
+        private final long low;
+        private final int count;
+        private final long[] rows;
+
+        private Segment(long low, int count, long[] rows) {
+            this.low = low;
+            this.count = count;
+            this.rows = rows;
+        }
+
+        private void emit(FactorizationConsumer consumer, long[] buffer) {
+            for (int i = 0; i < count; i++) {
+                int row = i * ROW_LENGTH;
+                int length = 0;
+                for (int entry = row + 1; entry < row + ROW_LENGTH && rows[entry] != 0; entry++) {
+                    long prime = rows[entry] >>> 8;
+                    for (int e = (int) (rows[entry] & 0xFF); e > 0; e--) {
+                        buffer[length++] = prime;
+                    }
+                }
+                if(rows[row] != 1) buffer[length++] = rows[row];
+                consumer.accept(low + i, buffer, length);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedFactorSieve{" +
+                "parallelism=" + parallelism +
+                '}';
+    }
+
+    /**
+     * Singleton instance sieving in the calling thread
+     *
+     * @return the SegmentedFactorSieve instance without executor
+     */
+    public static SegmentedFactorSieve getInstance() { return SegmentedFactorSieveHolder.INSTANCE; }
+
+    /**
+     *
+     * @param parallelism number of segments sieved at the same time on the common ForkJoinPool
+     * @return SegmentedFactorSieve instance with the given parallelism
+     * @throws IllegalArgumentException if parallelism < 1
+     */
+    public static SegmentedFactorSieve getInstance(int parallelism) {
+        return getInstance(ForkJoinPool.commonPool(), parallelism);
+    }
+
+    /**
+     *
+     * @param executor executor running the segments, the caller is responsible for shutting it down
+     * @param parallelism number of segments sieved at the same time
+     * @return SegmentedFactorSieve instance running on the given executor
+     * @throws IllegalArgumentException if parallelism < 1
+     */
+    public static SegmentedFactorSieve getInstance(ExecutorService executor, int parallelism) {
+        if(parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+        return new SegmentedFactorSieve(executor, parallelism);
+    }
+}
@@ -0,0 +1,214 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.LongConsumer;
+
+/**
+ * Segmented sieve of Eratosthenes for arbitrary ranges [lowerBound,upperBound] of long values.
+ * Only odd numbers are stored and the range is sieved in cache sized segments with the base primes up to sqrt(upperBound),
+ * so the memory needed is O(sqrt(upperBound) + segment size) independent of the width of the range.
+ * The primes of a segment are handed to the consumer before the next segment is sieved.
+ *
+ * @author benw@wwt
+ */
+public final class SegmentedSieveOfEratosthenes implements PrimeSequenceGenerator {
+
+    /** number of odd numbers per segment, 2^18 bits = 32 KB */
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 18;
+
+    private static class SegmentedSieveOfEratosthenesHolder {
+        private static final SegmentedSieveOfEratosthenes INSTANCE = new SegmentedSieveOfEratosthenes(DEFAULT_SEGMENT_SIZE);
+    }
+
+    private final int segmentSize;
+
+    private SegmentedSieveOfEratosthenes(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
+        PrimeSequence.Builder primeNumbers = new PrimeSequence.Builder(PrimeSequence.estimateCapacity(upperBound));
+        sieve(2, upperBound, p -> primeNumbers.add((int) p));
+        return primeNumbers.build();
+    }
+
+    /**
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive)
+     * @return all primes in [lowerBound,upperBound]
+     */
+    public LongPrimeSequence getPrimeSequence(long lowerBound, long upperBound) {
+        long width = Math.max(0, upperBound - Math.max(lowerBound, 0));
+        LongPrimeSequence.Builder primeNumbers = new LongPrimeSequence.Builder(
+                Math.min(PrimeSequence.estimateCapacity(width), 1 << 20));
+        sieve(lowerBound, upperBound, primeNumbers::add);
+        return primeNumbers.build();
+    }
+
+    /**
+     * hands all primes in [lowerBound,upperBound] in ascending order to the consumer
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive)
+     * @param consumer receives the primes, segment by segment
+     */
+    public void sieve(long lowerBound, long upperBound, LongConsumer consumer) {
+        if(upperBound < 2 || lowerBound > upperBound) return;
+        if(lowerBound <= 2) consumer.accept(2);
+        long start = Math.max(3, lowerBound | 1);
+        if(start > upperBound) return;
+        int[] basePrimes = oddPrimesUpTo(MathTool.isqrt(upperBound));
+        long span = 2L * segmentSize;
+        if(upperBound - start < span) {
+            // a single segment needs no next multiples, which take 1.2 GB for the base primes below 2^32
+            int count = (int) ((upperBound - start) / 2 + 1);
+            long[] bits = new long[(count + 63) >>> 6];
+            sieveSegment(basePrimes, start, upperBound, count, bits);
+            emitPrimes(bits, count, start, consumer);
+            return;
+        }
+        long[] nextMultiple = new long[basePrimes.length];
+        for (int i = 0; i < basePrimes.length; i++) {
+            long p = Integer.toUnsignedLong(basePrimes[i]);
+            long remainder = start % p;
+            long first = Math.max(p * p, remainder == 0 ? start : start + p - remainder);
+            if((first & 1) == 0) first += p;
+            nextMultiple[i] = first;
+        }
+        long[] bits = new long[(segmentSize + 63) >>> 6];
+        long segmentLow = start;
+        while(true) {
+            long segmentHigh = upperBound - segmentLow < span - 1 ? upperBound : segmentLow + span - 1;
+            int count = (int) ((segmentHigh - segmentLow) / 2 + 1);
+            Arrays.fill(bits, 0L);
+            for (int i = 0; i < basePrimes.length; i++) {
+                long p = Integer.toUnsignedLong(basePrimes[i]);
+                long multiple = nextMultiple[i];
+                if(multiple > segmentHigh) {
+                    if(p * p > segmentHigh) break;
+                    continue;
+                }
+                long index = (multiple - segmentLow) >>> 1;
+                for (; index < count; index += p) {
+                    bits[(int) (index >>> 6)] |= 1L << index;
+                }
+                long next = segmentLow + 2 * index;
+                nextMultiple[i] = next < 0 ? Long.MAX_VALUE : next;
+            }
+            emitPrimes(bits, count, segmentLow, consumer);
+            if(segmentHigh == upperBound) return;
+            segmentLow = (segmentHigh + 1) | 1;
+            if(segmentLow > upperBound) return;
+        }
+    }
+
+    /**
+     * sieves one segment independent of other segments, the first multiple of each base prime is computed by division
+     *
+     * @param basePrimes odd base primes (unsigned ints) up to at least sqrt(segmentHigh)
+     * @param segmentLow first number of the segment, must be odd
+     * @param segmentHigh last number of the segment
+     * @param count number of odd numbers in the segment
+     * @param bits scratch bitmap with at least count bits, bit i is set if segmentLow+2i is composite afterwards
+     */
+    static void sieveSegment(int[] basePrimes, long segmentLow, long segmentHigh, int count, long[] bits) {
+        Arrays.fill(bits, 0, (count + 63) >>> 6, 0L);
+        for (int basePrime : basePrimes) {
+            long p = Integer.toUnsignedLong(basePrime);
+            long square = p * p;
+            if(square > segmentHigh) break;
+            long remainder = segmentLow % p;
+            long first = Math.max(square, remainder == 0 ? segmentLow : segmentLow + p - remainder);
+            if((first & 1) == 0) first += p;
+            for (long index = (first - segmentLow) >>> 1; index < count; index += p) {
+                bits[(int) (index >>> 6)] |= 1L << index;
+            }
+        }
+    }
+
+    static void emitPrimes(long[] bits, int count, long segmentLow, LongConsumer consumer) {
+        for (int word = 0; word << 6 < count; word++) {
+            long candidates = ~bits[word];
+            while(candidates != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                if(index >= count) return;
+                consumer.accept(segmentLow + 2L * index);
+                candidates &= candidates - 1;
+            }
+        }
+    }
+
+    /**
+     * simple odd only sieve for the base primes, the result is stored as unsigned int because the base primes
+     * of the whole long range exceed Integer.MAX_VALUE
+     *
+     * @param limit upper bound (inclusive), at most 2^32-1
+     * @return all odd primes <= limit as unsigned ints
+     */
+    static int[] oddPrimesUpTo(long limit) {
+        if(limit < 3) return new int[0];
+        int size = (int) ((limit - 1) / 2);
+        BitSet composite = new BitSet(size + 1);
+        // index i represents the number 2i+1
+        for (long i = 1; (2 * i + 1) * (2 * i + 1) <= limit; i++) {
+            if(!composite.get((int) i)) {
+                long p = 2 * i + 1;
+                for (long j = (p * p) / 2; j <= size; j += p) {
+                    composite.set((int) j);
+                }
+            }
+        }
+        // the indices 1 to size which are not composite, sized exactly since the array reaches 600 MB below 2^32
+        int[] returnValue = new int[size - composite.cardinality()];
+        int n = 0;
+        for (int i = composite.nextClearBit(1); i <= size; i = composite.nextClearBit(i + 1)) {
+            returnValue[n++] = (int) (2L * i + 1);
+        }
+        return returnValue;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedSieveOfEratosthenes{" +
+                "segmentSize=" + segmentSize +
+                '}';
+    }
+
+    /**
+     * Default instance with segments of 2^18 odd numbers (32 KB bitmap)
+     *
+     * @return the default SegmentedSieveOfEratosthenes instance
+     */
+    public static SegmentedSieveOfEratosthenes getInstance() { return SegmentedSieveOfEratosthenesHolder.INSTANCE; }
+
+    /**
+     *
+     * @param segmentSize number of odd numbers sieved per segment, should fit into L1/L2 cache (segmentSize/8 bytes)
+     * @return SegmentedSieveOfEratosthenes instance with the given segment size
+     * @throws IllegalArgumentException if segmentSize < 64
+     */
+    public static SegmentedSieveOfEratosthenes getInstance(int segmentSize) {
+        if(segmentSize < 64) throw new IllegalArgumentException("segment size must be at least 64");
+        return new SegmentedSieveOfEratosthenes(segmentSize);
+    }
+}
@@ -15,8 +15,6 @@
 package com.wwt.tools.mathtools.prime;
 
 import java.util.BitSet;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * @author benw@wwt
@@ -34,23 +32,40 @@ public final class SieveOfEratosthenes implements PrimeSequenceGenerator {
 
 
     @Override
-    public List<Integer> getPrimeSequence(int upperBound) {
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        BitSet notPrime = sieve(upperBound);
+        int[] primeNumbers = new int[upperBound - 1 - notPrime.cardinality()];
+        collect(notPrime, upperBound, primeNumbers);
+        return PrimeSequence.wrap(primeNumbers, primeNumbers.length);
+    }
+
+    @Override
+    public int fillPrimeSequence(int upperBound, int[] buffer) {
+        return collect(sieve(upperBound), upperBound, buffer);
+    }
+
+    private static BitSet sieve(int upperBound) {
         if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
         BitSet notPrime  = new BitSet(upperBound+1);
-        for (int i = 2; i*i <= upperBound; i++) {
+        for (int i = 2; (long) i*i <= upperBound; i++) {
             if (!notPrime.get(i)) {
-                for (int j = i * 2; j <= upperBound; j += i) {
-                    notPrime.set(j);
+                for (long j = (long) i * i; j <= upperBound; j += i) {
+                    notPrime.set((int) j);
                 }
             }
         }
-        List<Integer> primeNumbers = new LinkedList<>();
-        for (int i = 2; i <= upperBound; i++) {
-            if (!notPrime.get(i)) {
-                primeNumbers.add(i);
+        return notPrime;
+    }
+
+    private static int collect(BitSet notPrime, int upperBound, int[] buffer) {
+        int count = 0;
+        for (int i = notPrime.nextClearBit(2); i <= upperBound && i > 0; i = notPrime.nextClearBit(i + 1)) {
+            if (count < buffer.length) {
+                buffer[count] = i;
             }
+            count++;
         }
-        return primeNumbers;
+        return count;
     }
 
     @Override
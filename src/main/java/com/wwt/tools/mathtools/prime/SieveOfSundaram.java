@@ -15,8 +15,6 @@
 package com.wwt.tools.mathtools.prime;
 
 import java.util.BitSet;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * @author benw@wwt
@@ -33,24 +31,50 @@ public final class SieveOfSundaram implements PrimeSequenceGenerator {
     private  SieveOfSundaram() {}
 
     @Override
-    public List<Integer> getPrimeSequence(int upperBound) {
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        BitSet notPrime = sieve(upperBound);
+        int maxIndex = (upperBound - 1) / 2;
+        int marked = notPrime.cardinality();
+        if (upperBound / 2 > maxIndex && notPrime.get(upperBound / 2)) {
+            marked--;
+        }
+        int[] primeNumbers = new int[1 + maxIndex - marked];
+        collect(notPrime, upperBound, primeNumbers);
+        return PrimeSequence.wrap(primeNumbers, primeNumbers.length);
+    }
+
+    @Override
+    public int fillPrimeSequence(int upperBound, int[] buffer) {
+        return collect(sieve(upperBound), upperBound, buffer);
+    }
+
+    /**
+     * index i in the result represents the odd number 2i+1
+     */
+    private static BitSet sieve(int upperBound) {
         if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
         int maxCheck = upperBound/2;
-        BitSet notPrime = new BitSet(upperBound+1);
-        for (int i = 1; i <= maxCheck; i++) {
-            for (int j = i; j <= (maxCheck - i)/ (2 * i + 1); j++)
-                notPrime.set(i + j + 2 * i * j);
+        BitSet notPrime = new BitSet(maxCheck+1);
+        for (int i = 1; 2L * i * (i + 1) <= maxCheck; i++) {
+            for (long j = i; j <= (maxCheck - i)/ (2 * i + 1); j++)
+                notPrime.set((int) (i + j + 2 * i * j));
         }
+        return notPrime;
+    }
 
-        List<Integer> primeNumbers = new LinkedList<>();
-        primeNumbers.add(2);
-        if(upperBound>2) primeNumbers.add(3);
-        for (int i = 2; i < maxCheck; i++) {
-            if (!notPrime.get(i)) {
-                primeNumbers.add(2*i+1);
+    private static int collect(BitSet notPrime, int upperBound, int[] buffer) {
+        int maxIndex = (upperBound - 1) / 2;
+        if (buffer.length > 0) {
+            buffer[0] = 2;
+        }
+        int count = 1;
+        for (int i = notPrime.nextClearBit(1); i <= maxIndex && i > 0; i = notPrime.nextClearBit(i + 1)) {
+            if (count < buffer.length) {
+                buffer[count] = 2 * i + 1;
             }
+            count++;
         }
-        return primeNumbers;
+        return count;
     }
 
     @Override
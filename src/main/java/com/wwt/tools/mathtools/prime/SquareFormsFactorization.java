@@ -0,0 +1,264 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Shanks' square forms factorization (SQUFOF). The continued fraction expansion of sqrt(k*n) is searched for a square
+ * form, the reverse cycle from its square root then yields a factor of n in O(n^(1/4)) steps with single word
+ * arithmetic only. The expansions for the multipliers k of Gower and Wagstaff are raced against each other in slices
+ * of SLICE steps, in the calling thread or spread over the workers of a pool, the first factor found wins.
+ * Suited for numbers from 40 to 63 bits, small prime factors are removed by trial division first and numbers where no
+ * multiplier succeeds are left to PollardRhoFactorization.
+ *
+ * @author benw@wwt
+ */
+public final class SquareFormsFactorization implements FactorizationAlgorithm {
+
+    /** primes below this bound are removed by trial division, it includes the prime factors of the multipliers */
+    private static final int TRIAL_DIVISION_BOUND = 1 << 8;
+    private static final int[] MULTIPLIERS = {1, 3, 5, 7, 11, 3 * 5, 3 * 7, 3 * 11, 5 * 7, 5 * 11, 7 * 11, 3 * 5 * 7,
+            3 * 5 * 11, 3 * 7 * 11, 5 * 7 * 11, 3 * 5 * 7 * 11};
+    /** forward steps per multiplier before switching to the next one */
+    private static final int SLICE = 1 << 8;
+
+    private final PrimeTest primeTest;
+    private final ForkJoinPool pool;
+
+    private SquareFormsFactorization(PrimeTest primeTest, ForkJoinPool pool) {
+        this.primeTest = primeTest;
+        this.pool = pool;
+    }
+
+    /**
+     *
+     * @param number the number which should be split into the prime factor representation
+     * @return the prime factors in ascending order, empty for 1
+     * @throws IllegalArgumentException if number is < 1
+     */
+    @Override
+    public List<Long> factorize(final long number) {
+        if(number < 1) throw new IllegalArgumentException("only positive numbers can be factorized");
+        List<Long> returnValue = new ArrayList<>();
+        long toSplit = number;
+        PrimeSequence primes = PrimeCache.getInstance().getPrimeSequence(TRIAL_DIVISION_BOUND);
+        for (int i = 0; i < primes.size(); i++) {
+            long prime = primes.getInt(i);
+            while(toSplit % prime == 0) {
+                returnValue.add(prime);
+                toSplit /= prime;
+            }
+        }
+        split(toSplit, returnValue);
+        Collections.sort(returnValue);
+        return returnValue;
+    }
+
+    /**
+     * adds the prime factors of the number n without factors below TRIAL_DIVISION_BOUND
+     */
+    private void split(long n, List<Long> factors) {
+        if(n == 1) return;
+        if(n < (long) TRIAL_DIVISION_BOUND * TRIAL_DIVISION_BOUND || primeTest.isPrime(n)) {
+            factors.add(n);
+            return;
+        }
+        if(MathTool.isSquare(n)) {
+            long root = MathTool.isqrt(n);
+            split(root, factors);
+            split(root, factors);
+            return;
+        }
+        long divisor = findDivisor(n);
+        if(divisor == 0) {
+            factors.addAll(PollardRhoFactorization.getInstance(primeTest).factorize(n));
+            return;
+        }
+        split(divisor, factors);
+        split(n / divisor, factors);
+    }
+
+    /**
+     * @param n odd composite number which is no square
+     * @return a non trivial divisor of n, 0 if all multipliers failed
+     */
+    long findDivisor(long n) {
+        List<SquareForm> forms = new ArrayList<>();
+        for (int k : MULTIPLIERS) {
+            // k*n must fit into 64 bits (unsigned), then P < 2^32 and Q < 2^33 and all products fit into a long
+            if(Long.compareUnsigned(k, Long.divideUnsigned(-1L, n)) <= 0) forms.add(new SquareForm(n, k));
+        }
+        if(pool == null || forms.size() < 2) {
+            return race(forms, () -> false);
+        }
+        int tasks = Math.min(forms.size(), pool.getParallelism());
+        // returns with the first divisor, the other tasks stop after their current slice
+        Long divisor = WitnessRounds.firstResult(tasks, pool, (task, done) -> {
+            List<SquareForm> share = new ArrayList<>();
+            for (int i = task; i < forms.size(); i += tasks) {
+                share.add(forms.get(i));
+            }
+            long found = race(share, done);
+            return found != 0 ? found : null;
+        });
+        return divisor != null ? divisor : 0;
+    }
+
+    /**
+     * advances the forms round robin until one finds a divisor
+     *
+     * @param forms the competing expansions
+     * @param done true once another task has won
+     * @return a non trivial divisor, 0 if all forms are exhausted or another task has won
+     */
+    private static long race(List<SquareForm> forms, BooleanSupplier done) {
+        List<SquareForm> active = new ArrayList<>(forms);
+        while(!active.isEmpty()) {
+            for (int i = 0; i < active.size(); i++) {
+                if(done.getAsBoolean()) return 0;
+                long divisor = active.get(i).advance(SLICE);
+                if(divisor > 1) return divisor;
+                if(divisor == 0) active.remove(i--);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * continued fraction expansion of sqrt(k*n) which can be advanced step by step
+     */
+    private static final class SquareForm {
+        private final long n;
+        /** k*n, unsigned */
+        private final long kn;
+        private final long p0;
+        /** maximal number of forward steps */
+        private final long limit;
+        private long p;
+        private long pPrevious;
+        private long q;
+        private long qPrevious;
+        private long step;
+
+        private SquareForm(long n, int k) {
+            this.n = n;
+            this.kn = n * k;
+            this.p0 = unsignedSquareRoot(kn);
+            this.limit = 3 * 2 * MathTool.isqrt(2 * p0);
+            this.p = p0;
+            this.pPrevious = p0;
+            this.qPrevious = 1;
+            // the differences with kn are small and exact in wrapping arithmetic
+            this.q = kn - p0 * p0;
+            this.step = 1;
+        }
+
+        /**
+         * @param steps number of forward steps
+         * @return a non trivial divisor of n, 1 if none was found yet or 0 if the expansion is exhausted
+         */
+        private long advance(int steps) {
+            if(q == 0) return 0;
+            for (int s = 0; s < steps; s++) {
+                if(++step > limit) return 0;
+                long b = (p0 + p) / q;
+                p = b * q - p;
+                long qNext = qPrevious + b * (pPrevious - p);
+                qPrevious = q;
+                q = qNext;
+                pPrevious = p;
+                if((step & 1) == 0 && MathTool.isSquare(q)) {
+                    long divisor = reverseCycle(MathTool.isqrt(q));
+                    if(divisor != 1 && divisor != n) return divisor;
+                }
+            }
+            return 1;
+        }
+
+        /**
+         * runs the reverse cycle from the square root r of the square form until p repeats
+         */
+        private long reverseCycle(long r) {
+            long b = (p0 - p) / r;
+            long pr = b * r + p;
+            long pPreviousR;
+            long qPreviousR = r;
+            long qr = (kn - pr * pr) / r;
+            do {
+                b = (p0 + pr) / qr;
+                pPreviousR = pr;
+                pr = b * qr - pr;
+                long qNext = qPreviousR + b * (pPreviousR - pr);
+                qPreviousR = qr;
+                qr = qNext;
+            } while(pr != pPreviousR);
+            return IterativeGCDAlgorithm.getInstance().getGreatestCommonDivisor(n, qPreviousR);
+        }
+    }
+
+    /**
+     * @param number unsigned
+     * @return floor(sqrt(number))
+     */
+    private static long unsignedSquareRoot(long number) {
+        double value = number < 0 ? (number >>> 1) * 2.0 : number;
+        long root = Math.min((long) Math.sqrt(value), 0xFFFFFFFFL);
+        while(Long.compareUnsigned(root * root, number) > 0) root--;
+        while(root < 0xFFFFFFFFL && Long.compareUnsigned((root + 1) * (root + 1), number) <= 0) root++;
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return "SquareFormsFactorization{" +
+                "primeTest=" + primeTest +
+                ", pool=" + pool +
+                '}';
+    }
+
+    /**
+     *
+     * @return SquareFormsFactorization racing the multipliers in the calling thread, using the deterministic MillerRabinTest
+     */
+    public static SquareFormsFactorization getInstance() {
+        return new SquareFormsFactorization(MillerRabinTest.getInstance(), null);
+    }
+
+    /**
+     *
+     * @param primeTest deterministic test which stops the recursion
+     * @return SquareFormsFactorization racing the multipliers in the calling thread
+     */
+    public static SquareFormsFactorization getInstance(PrimeTest primeTest) {
+        return new SquareFormsFactorization(primeTest, null);
+    }
+
+    /**
+     *
+     * @param primeTest deterministic test which stops the recursion
+     * @param pool pool whose workers race the multipliers
+     * @return SquareFormsFactorization racing the multipliers in parallel
+     */
+    public static SquareFormsFactorization getInstance(PrimeTest primeTest, ForkJoinPool pool) {
+        return new SquareFormsFactorization(primeTest, pool);
+    }
+}
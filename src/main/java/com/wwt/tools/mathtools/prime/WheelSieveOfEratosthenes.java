@@ -0,0 +1,181 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Sieve of Eratosthenes on a mod 30 wheel. Only the 8 residues coprime to 30 are stored, so one byte represents
+ * 30 integers which needs 3.75 times less memory than a bitmap over all odd and even numbers. Multiples of 7, 11, 13
+ * and 17 are not crossed off but copied from a pre-sieved pattern tile, the remaining base primes only visit
+ * multiples on the wheel. The range is processed in cache sized segments, so long ranges beyond 10^10 are possible.
+ *
+ * @author benw@wwt
+ */
+public final class WheelSieveOfEratosthenes implements PrimeSequenceGenerator {
+
+    private static final int[] WHEEL_PRIMES = {2, 3, 5};
+    /** the residues modulo 30 coprime to 30, bit i of a byte represents residue RESIDUES[i] */
+    static final int[] RESIDUES = {1, 7, 11, 13, 17, 19, 23, 29};
+    /** bit index of a residue modulo 30, -1 if the residue is not coprime to 30 */
+    static final int[] BIT_OF_RESIDUE = new int[30];
+    /** pattern with all multiples of 7, 11, 13 and 17 crossed off, period 7*11*13*17 bytes */
+    private static final byte[] PRESIEVE_PATTERN;
+    private static final int[] PRESIEVE_PRIMES = {7, 11, 13, 17};
+    /** bytes per segment, 256 KB (L2) = 7864320 integers, smaller segments spend too much time on the per prime setup */
+    private static final int SEGMENT_BYTES = 1 << 18;
+
+    static {
+        Arrays.fill(BIT_OF_RESIDUE, -1);
+        for (int i = 0; i < RESIDUES.length; i++) {
+            BIT_OF_RESIDUE[RESIDUES[i]] = i;
+        }
+        int period = 1;
+        for (int p : PRESIEVE_PRIMES) {
+            period *= p;
+        }
+        PRESIEVE_PATTERN = new byte[period];
+        for (int p : PRESIEVE_PRIMES) {
+            for (int residue : RESIDUES) {
+                // multiples p*k with k = residue mod 30 are 30p apart, which is p bytes
+                int multiple = p * residue;
+                for (int index = multiple / 30; index < period; index += p) {
+                    PRESIEVE_PATTERN[index] |= 1 << BIT_OF_RESIDUE[multiple % 30];
+                }
+            }
+        }
+    }
+
+    private static class WheelSieveOfEratosthenesHolder {
+        private static final WheelSieveOfEratosthenes INSTANCE = new WheelSieveOfEratosthenes();
+    }
+
+    /**
+     * not instantiatable -> singleton because object is stateless
+     */
+    private WheelSieveOfEratosthenes() {}
+
+    @Override
+    public PrimeSequence getPrimeSequence(int upperBound) {
+        if(upperBound < 2) throw new IllegalArgumentException("no primes in that range");
+        PrimeSequence.Builder primeNumbers = new PrimeSequence.Builder(PrimeSequence.estimateCapacity(upperBound));
+        sieve(2, upperBound, p -> primeNumbers.add((int) p));
+        return primeNumbers.build();
+    }
+
+    /**
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive)
+     * @return all primes in [lowerBound,upperBound]
+     */
+    public LongPrimeSequence getPrimeSequence(long lowerBound, long upperBound) {
+        LongPrimeSequence.Builder primeNumbers = new LongPrimeSequence.Builder(1 << 10);
+        sieve(lowerBound, upperBound, primeNumbers::add);
+        return primeNumbers.build();
+    }
+
+    /**
+     * hands all primes in [lowerBound,upperBound] in ascending order to the consumer
+     *
+     * @param lowerBound lower bound (inclusive)
+     * @param upperBound upper bound (inclusive), at most Long.MAX_VALUE - 30
+     * @param consumer receives the primes, segment by segment
+     */
+    public void sieve(long lowerBound, long upperBound, LongConsumer consumer) {
+        if(upperBound < 2 || lowerBound > upperBound) return;
+        if(upperBound > Long.MAX_VALUE - 30) throw new IllegalArgumentException("upper bound too big");
+        for (int p : WHEEL_PRIMES) {
+            if(lowerBound <= p && p <= upperBound) consumer.accept(p);
+        }
+        int[] basePrimes = SegmentedSieveOfEratosthenes.oddPrimesUpTo(MathTool.isqrt(upperBound));
+        byte[] segment = new byte[SEGMENT_BYTES];
+        long byteLow = Math.max(0, lowerBound) / 30;
+        long byteEnd = upperBound / 30 + 1;
+        while(byteLow < byteEnd) {
+            int byteCount = (int) Math.min(SEGMENT_BYTES, byteEnd - byteLow);
+            sieveSegment(basePrimes, byteLow, byteCount, segment);
+            for (int i = 0; i < byteCount; i++) {
+                int candidates = ~segment[i] & 0xFF;
+                long base = 30 * (byteLow + i);
+                while(candidates != 0) {
+                    long n = base + RESIDUES[Integer.numberOfTrailingZeros(candidates)];
+                    if(n > upperBound) return;
+                    if(n >= lowerBound) consumer.accept(n);
+                    candidates &= candidates - 1;
+                }
+            }
+            byteLow += byteCount;
+        }
+    }
+
+    /**
+     * sieves the integers [30*byteLow, 30*(byteLow+byteCount)) on the wheel, afterwards a bit is set if the represented
+     * number is not prime
+     *
+     * @param basePrimes odd base primes (unsigned ints) up to at least sqrt(30*(byteLow+byteCount))
+     * @param byteLow first byte of the segment
+     * @param byteCount number of bytes
+     * @param segment scratch array with at least byteCount bytes
+     */
+    static void sieveSegment(int[] basePrimes, long byteLow, int byteCount, byte[] segment) {
+        int offset = (int) (byteLow % PRESIEVE_PATTERN.length);
+        for (int i = 0; i < byteCount; ) {
+            int length = Math.min(byteCount - i, PRESIEVE_PATTERN.length - offset);
+            System.arraycopy(PRESIEVE_PATTERN, offset, segment, i, length);
+            i += length;
+            offset = 0;
+        }
+        if(byteLow == 0) {
+            // 1 is not prime, the pre-sieved primes themselves are
+            segment[0] = (byte) ((segment[0] | 1) & ~0x1E);
+        }
+        long low = 30 * byteLow;
+        long high = 30 * (byteLow + byteCount);
+        for (int basePrime : basePrimes) {
+            long p = Integer.toUnsignedLong(basePrime);
+            if(p <= 17) continue;
+            if(p * p >= high) break;
+            // ceil(low/p) without the overflow of low+p-1 near Long.MAX_VALUE
+            long kMin = Math.max(p, low / p + (low % p == 0 ? 0 : 1));
+            int kMinResidue = (int) (kMin % 30);
+            int pResidue = (int) (p % 30);
+            for (int residue : RESIDUES) {
+                int delta = residue - kMinResidue;
+                long k = kMin + (delta < 0 ? delta + 30 : delta);
+                int bit = 1 << BIT_OF_RESIDUE[pResidue * residue % 30];
+                // p*k may overflow at the top of the long range, p*k-low < 31*p is exact in two's complement
+                for (long index = (p * k - low) / 30; index < byteCount; index += p) {
+                    segment[(int) index] |= bit;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WheelSieveOfEratosthenes{}";
+    }
+
+    /**
+     * Singleton instance
+     *
+     * @return the one and only WheelSieveOfEratosthenes instance
+     */
+    public static WheelSieveOfEratosthenes getInstance() { return WheelSieveOfEratosthenesHolder.INSTANCE; }
+}
@@ -0,0 +1,121 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the independent rounds of a probabilistic prime test, optionally spread over the workers of a pool. The rounds
+ * are dealt out to at most parallelism tasks, each task checks before every round whether another one has already
+ * found a witness and the caller returns with the first witness, so a composite costs about one round of latency.
+ * The race itself is available to the factorization algorithms as {@link #firstResult}.
+ *
+ * @author benw@wwt
+ */
+final class WitnessRounds {
+
+    private WitnessRounds() {}
+
+    /**
+     *
+     * @param rounds number of rounds
+     * @param pool pool running the rounds, null to run them in the calling thread
+     * @param round one round with a fresh witness, returns false if the witness proves the number composite
+     * @return true if all rounds passed
+     */
+    static boolean allPass(int rounds, ForkJoinPool pool, BooleanSupplier round) {
+        if(pool == null || rounds < 2) {
+            for (int i = 0; i < rounds; i++) {
+                if(!round.getAsBoolean()) return false;
+            }
+            return true;
+        }
+        int tasks = Math.min(rounds, pool.getParallelism());
+        // returns as soon as the first witness is found, the other tasks stop after their current round
+        Boolean failed = firstResult(tasks, pool, (task, done) -> {
+            int share = rounds / tasks + (task < rounds % tasks ? 1 : 0);
+            for (int i = 0; i < share && !done.getAsBoolean(); i++) {
+                if(!round.getAsBoolean()) return Boolean.FALSE;
+            }
+            return null;
+        });
+        return failed == null;
+    }
+
+    /**
+     * runs the tasks on the pool and returns the first non null result. The caller returns as soon as one task has
+     * a result or all tasks have finished, tasks still running should poll done and stop. An exception of any task
+     * is rethrown to the caller, wrapped into a CompletionException.
+     *
+     * @param tasks number of tasks
+     * @param pool pool running the tasks
+     * @param task body of the tasks, gets the task index in [0,tasks)
+     * @param <T> type of the result
+     * @return the first non null result, null if all tasks returned null
+     */
+    static <T> T firstResult(int tasks, ForkJoinPool pool, Task<T> task) {
+        AtomicInteger running = new AtomicInteger(tasks);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        for (int index = 0; index < tasks; index++) {
+            int taskIndex = index;
+            pool.execute(() -> {
+                try {
+                    T value = task.run(taskIndex, result::isDone);
+                    if(value != null) result.complete(value);
+                }
+                catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+                finally {
+                    if(running.decrementAndGet() == 0) result.complete(null);
+                }
+            });
+        }
+        return result.join();
+    }
+
+    /**
+     * one of the competing tasks of {@link #firstResult}
+     *
+     * @param <T> type of the result
+     */
+    @FunctionalInterface
+    interface Task<T> {
+        /**
+         * @param index index of the task
+         * @param done true once another task has a result
+         * @return the result, null if there is none
+         */
+        T run(int index, BooleanSupplier done);
+    }
+
+    /**
+     * @param n number to test, n > 4
+     * @return uniformly distributed random witness in [2,n-2]
+     */
+    static BigInteger randomWitness(BigInteger n) {
+        BigInteger max = n.subtract(BigInteger.valueOf(2));
+        BigInteger a;
+        do {
+            a = new BigInteger(n.bitLength(), ThreadLocalRandom.current());
+        } while(a.compareTo(BigInteger.valueOf(2)) < 0 || a.compareTo(max) > 0);
+        return a;
+    }
+}
@@ -0,0 +1,65 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BigMontgomeryContextTest {
+
+    @Test
+    public void arithmeticTest() {
+        for (int i = 0; i < 1000; i++) {
+            int bits = ThreadLocalRandom.current().nextInt(2, 600);
+            BigInteger mod = new BigInteger(bits, ThreadLocalRandom.current()).setBit(0).setBit(1);
+            if (i % 10 == 0) mod = BigInteger.ONE.shiftLeft(32 * (1 + i % 7)).subtract(BigInteger.ONE);
+            BigMontgomeryContext context = BigMontgomeryContext.getInstance(mod);
+            BigInteger a = new BigInteger(bits + 10, ThreadLocalRandom.current());
+            BigInteger b = new BigInteger(bits, ThreadLocalRandom.current()).mod(mod);
+            int factor = ThreadLocalRandom.current().nextInt();
+            int[] x = context.toMontgomery(a);
+            int[] y = context.toMontgomery(b);
+            int[] result = context.newValue();
+            assertEquals(a.mod(mod), context.fromMontgomery(x));
+            context.multiply(x, y, result);
+            assertEquals(a.multiply(b).mod(mod), context.fromMontgomery(result));
+            context.square(x, result);
+            assertEquals(a.multiply(a).mod(mod), context.fromMontgomery(result));
+            context.add(x, y, result);
+            assertEquals(a.add(b).mod(mod), context.fromMontgomery(result));
+            context.subtract(x, y, result);
+            assertEquals(a.subtract(b).mod(mod), context.fromMontgomery(result));
+            context.half(x, result);
+            assertEquals(a.multiply(BigInteger.valueOf(2).modInverse(mod)).mod(mod), context.fromMontgomery(result));
+            context.multiply(x, factor, result);
+            assertEquals(a.multiply(BigInteger.valueOf(factor)).mod(mod), context.fromMontgomery(result));
+            context.multiply(x, y, x);
+            assertEquals(a.multiply(b).mod(mod), context.fromMontgomery(x));
+        }
+        BigMontgomeryContext context = BigMontgomeryContext.getInstance(BigInteger.valueOf(29));
+        assertEquals(BigInteger.ONE, context.fromMontgomery(context.getOne()));
+        assertTrue(context.isZero(context.toMontgomery(BigInteger.valueOf(58))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evenModulusExceptionTest() {
+        BigMontgomeryContext.getInstance(BigInteger.TEN);
+    }
+}
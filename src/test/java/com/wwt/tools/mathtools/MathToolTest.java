@@ -16,8 +16,10 @@ package com.wwt.tools.mathtools;
 
 import org.junit.Test;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
@@ -35,6 +37,55 @@ public class MathToolTest {
         assertEquals(2,MathTool.exponentiationModulo(2,3,3));
         assertEquals(24,MathTool.exponentiationModulo(23,20,29));
         assertEquals(0,MathTool.exponentiationModulo(23,20,1));
+        assertEquals(1,MathTool.exponentiationModulo(23,0,29));
+        long bigPrime = 4611686018427387847L;
+        assertEquals(1,MathTool.exponentiationModulo(3,bigPrime-1,bigPrime));
+        BigInteger mod = BigInteger.valueOf(Long.MAX_VALUE - 1);
+        assertEquals(BigInteger.valueOf(123456789123L).modPow(BigInteger.valueOf(987654321987L),mod).longValue(),
+                MathTool.exponentiationModulo(123456789123L,987654321987L,Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void batchModularExponentiationTest() {
+        long [] mods = {29, 4611686018427387847L, Long.MAX_VALUE - 1, -1000003};
+        long [] exps = {0, 1, 20, 987654321987L};
+        for (long mod : mods) {
+            for (long exp : exps) {
+                long [] bases = new long[1000];
+                for (int i = 0; i < bases.length; i++) {
+                    bases[i] = ThreadLocalRandom.current().nextLong();
+                }
+                long [] results = new long[bases.length];
+                MathTool.exponentiationModulo(bases, exp, mod, results);
+                for (int i = 0; i < bases.length; i++) {
+                    assertEquals(MathTool.exponentiationModulo(bases[i], exp, mod), results[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelBatchModularExponentiationTest() {
+        long mod = 4611686018427387847L;
+        long [] bases = new long[100000];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = ThreadLocalRandom.current().nextLong(mod);
+        }
+        long [] results = new long[bases.length];
+        MathTool.exponentiationModulo(bases, mod - 1, mod, results, ForkJoinPool.commonPool());
+        for (int i = 0; i < bases.length; i++) {
+            assertEquals(bases[i] == 0 ? 0 : 1, results[i]);
+        }
+        long [] inPlace = Arrays.copyOf(bases, bases.length);
+        MathTool.exponentiationModulo(inPlace, 3, mod, inPlace, ForkJoinPool.commonPool());
+        for (int i = 0; i < bases.length; i += 97) {
+            assertEquals(MathTool.exponentiationModulo(bases[i], 3, mod), inPlace[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchModularExponentiationExceptionTest() {
+        MathTool.exponentiationModulo(new long[5], 3, 7, new long[4]);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -48,6 +99,27 @@ public class MathToolTest {
         assertEquals(0,MathTool.multiplyModulo(1,18,3));
         assertEquals(0,MathTool.multiplyModulo(3,5,5));
         assertEquals(6,MathTool.multiplyModulo(4,5,7));
+        assertEquals(6,MathTool.multiplyModulo(-3,5,7));
+        long mod = Long.MAX_VALUE - 24;
+        for (int i = 0; i < 1000; i++) {
+            long m = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            long n = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            assertEquals(BigInteger.valueOf(m).multiply(BigInteger.valueOf(n)).mod(BigInteger.valueOf(mod)).longValue(),
+                    MathTool.multiplyModulo(m,n,mod));
+        }
+    }
+
+    @Test
+    public void multiplyModuloUnsignedTest() {
+        BigInteger twoTo64 = BigInteger.ONE.shiftLeft(64);
+        for (int i = 0; i < 1000; i++) {
+            long a = ThreadLocalRandom.current().nextLong();
+            long b = ThreadLocalRandom.current().nextLong();
+            long mod = ThreadLocalRandom.current().nextLong() | 1L << (i % 64);
+            BigInteger expected = unsigned(a).multiply(unsigned(b)).mod(unsigned(mod));
+            assertEquals(expected.longValue(), MathTool.multiplyModuloUnsigned(a,b,mod));
+            assertEquals(unsigned(a).multiply(unsigned(b)).divide(twoTo64).longValue(), MathTool.multiplyHighUnsigned(a,b));
+        }
     }
 
     @Test
@@ -63,6 +135,64 @@ public class MathToolTest {
 
     }
 
+    @Test
+    public void isSquareLargeTest(){
+        assertTrue(MathTool.isSquare(3037000499L * 3037000499L));
+        assertFalse(MathTool.isSquare(3037000499L * 3037000499L - 1));
+        assertFalse(MathTool.isSquare(3037000499L * 3037000499L + 1));
+        assertFalse(MathTool.isSquare(Long.MAX_VALUE));
+        assertFalse(MathTool.isSquare(-4));
+        assertTrue(MathTool.isSquare(0));
+        for (int i = 0; i < 10000; i++) {
+            long root = ThreadLocalRandom.current().nextLong(3037000500L);
+            assertTrue(MathTool.isSquare(root * root));
+            if(root > 1) assertFalse(MathTool.isSquare(root * root - 1));
+        }
+    }
+
+    @Test
+    public void integerRootTest(){
+        assertEquals(3037000499L,MathTool.isqrt(Long.MAX_VALUE));
+        assertEquals(2097151L,MathTool.icbrt(Long.MAX_VALUE));
+        assertEquals(0,MathTool.isqrt(0));
+        assertEquals(3,MathTool.isqrt(15));
+        assertEquals(4,MathTool.isqrt(16));
+        assertEquals(2,MathTool.icbrt(26));
+        assertEquals(3,MathTool.icbrt(27));
+        assertEquals(Long.MAX_VALUE,MathTool.iroot(Long.MAX_VALUE,1));
+        assertEquals(1,MathTool.iroot(Long.MAX_VALUE,63));
+        assertEquals(2,MathTool.iroot(Long.MAX_VALUE,62));
+        assertEquals(7,MathTool.iroot(7L*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7,22));
+        assertEquals(6,MathTool.iroot(7L*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7*7-1,22));
+        for (int i = 0; i < 1000; i++) {
+            long n = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            int k = ThreadLocalRandom.current().nextInt(1, 64);
+            BigInteger root = BigInteger.valueOf(MathTool.iroot(n, k));
+            assertTrue(root.pow(k).compareTo(BigInteger.valueOf(n)) <= 0);
+            assertTrue(root.add(BigInteger.ONE).pow(k).compareTo(BigInteger.valueOf(n)) > 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void integerRootExceptionTest(){
+        MathTool.isqrt(-1);
+    }
+
+    @Test
+    public void perfectPowerTest(){
+        assertTrue(MathTool.isPerfectPower(1));
+        assertTrue(MathTool.isPerfectPower(8));
+        assertTrue(MathTool.isPerfectPower(1L << 62));
+        assertTrue(MathTool.isPerfectPower(3486784401L));
+        assertFalse(MathTool.isPerfectPower(3486784402L));
+        assertFalse(MathTool.isPerfectPower(Long.MAX_VALUE));
+        assertFalse(MathTool.isPerfectPower(12));
+        assertEquals(62,MathTool.perfectPowerExponent(1L << 62));
+        assertEquals(20,MathTool.perfectPowerExponent(3486784401L));
+        assertEquals(12,MathTool.perfectPowerExponent(2176782336L));
+        assertEquals(1,MathTool.perfectPowerExponent(2305843009213693951L));
+    }
+
     public static void fillArrayWithRandomDoubles(double [] valueArray, double bound) {
         for (int i =0;i< valueArray.length;i++) {
             valueArray[i] = ThreadLocalRandom.current().nextDouble(bound) -(bound/2);
@@ -97,6 +227,10 @@ public class MathToolTest {
         return vector;
     }
 
+    public static BigInteger unsigned(long value) {
+        return new BigInteger(Long.toUnsignedString(value));
+    }
+
     public static List<Integer> getArrayAsList(int [] arr) {
         return Arrays.stream(arr).boxed().collect(Collectors.toList());
     }
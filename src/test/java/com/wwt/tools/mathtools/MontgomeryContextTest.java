@@ -0,0 +1,73 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.wwt.tools.mathtools.MathToolTest.unsigned;
+import static org.junit.Assert.assertEquals;
+
+public class MontgomeryContextTest {
+
+    @Test
+    public void multiplyTest() {
+        for (int i = 0; i < 1000; i++) {
+            long mod = ThreadLocalRandom.current().nextLong() | 1L | 1L << (i % 64);
+            MontgomeryContext context = MontgomeryContext.getInstance(mod);
+            long a = ThreadLocalRandom.current().nextLong();
+            long b = ThreadLocalRandom.current().nextLong();
+            long product = context.fromMontgomery(context.multiply(context.toMontgomery(a), context.toMontgomery(b)));
+            assertEquals(unsigned(a).multiply(unsigned(b)).mod(unsigned(mod)).longValue(), product);
+            assertEquals(product, context.modMultiply(a, b));
+            assertEquals(unsigned(a).mod(unsigned(mod)).longValue(), context.fromMontgomery(context.toMontgomery(a)));
+        }
+    }
+
+    @Test
+    public void powTest() {
+        for (int i = 0; i < 200; i++) {
+            long mod = ThreadLocalRandom.current().nextLong() | 1L;
+            MontgomeryContext context = MontgomeryContext.getInstance(mod);
+            long base = ThreadLocalRandom.current().nextLong();
+            long exp = ThreadLocalRandom.current().nextLong();
+            BigInteger expected = unsigned(base).modPow(unsigned(exp), unsigned(mod));
+            assertEquals(expected.longValue(), context.modPow(base, exp));
+        }
+        MontgomeryContext context = MontgomeryContext.getInstance(29);
+        assertEquals(24, context.modPow(23, 20));
+        assertEquals(1, context.modPow(23, 0));
+        assertEquals(0, MontgomeryContext.getInstance(1).modPow(5, 3));
+    }
+
+    @Test
+    public void addSubtractTest() {
+        long mod = -1L;
+        MontgomeryContext context = MontgomeryContext.getInstance(mod);
+        long a = context.toMontgomery(-4L);
+        long b = context.toMontgomery(5L);
+        assertEquals(2, context.fromMontgomery(context.add(a, b)));
+        assertEquals(-9L, context.fromMontgomery(context.subtract(a, b)));
+        assertEquals(8, context.fromMontgomery(context.subtract(b, a)));
+        assertEquals(3, context.fromMontgomery(context.negate(a)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void evenModulusExceptionTest() {
+        MontgomeryContext.getInstance(10);
+    }
+}
@@ -17,6 +17,14 @@ package com.wwt.tools.mathtools.prime;
 import com.wwt.tools.mathtools.MathToolTest;
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
 import static org.junit.Assert.*;
 
 public class FactorizationTest {
@@ -50,10 +58,260 @@ public class FactorizationTest {
         //System.out.println(a.factorize(Integer.MAX_VALUE-1));
     }
 
+    @Test
+    public void factorizationByDivisionLongTest() {
+        FactorizationAlgorithm a = FactorizationByDivision.getInstance();
+        assertEquals(MathToolTest.getArrayAsList(new long[]{Integer.MAX_VALUE}), a.factorize(Integer.MAX_VALUE));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{7, 7, 73, 127, 337, 92737, 649657}), a.factorize(Long.MAX_VALUE));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{99999971L, 99999989L}), a.factorize(99999971L * 99999989L));
+        assertEquals(0, a.factorize(1).size());
+        FactorizationAlgorithm b = FactorizationByDivision.getInstance(SieveOfSundaram.getInstance());
+        for (long n = 999999000; n < 1000000000; n++) {
+            List<Long> factors = a.factorize(n);
+            assertEquals(factors, b.factorize(n));
+            assertEquals(n, factors.stream().mapToLong(Long::longValue).reduce(1, (x, y) -> x * y));
+        }
+    }
+
+    @Test
+    public void pollardRhoFactorizationTest() {
+        FactorizationAlgorithm a = PollardRhoFactorization.getInstance();
+        assertEquals(MathToolTest.getArrayAsList(pf16), a.factorize( getNumberFromFactorization(pf16)));
+        assertEquals(MathToolTest.getArrayAsList(pf60), a.factorize( getNumberFromFactorization(pf60)));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{7, 7, 73, 127, 337, 92737, 649657}), a.factorize(Long.MAX_VALUE));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{2147483647L, 4294967291L}), a.factorize(2147483647L * 4294967291L));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{3037000493L, 3037000493L}), a.factorize(3037000493L * 3037000493L));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{2097143, 2097143, 2097143}), a.factorize(2097143L * 2097143L * 2097143L));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{9223372036854775783L}), a.factorize(9223372036854775783L));
+        assertEquals(0, a.factorize(1).size());
+        FactorizationAlgorithm b = FactorizationByDivision.getInstance();
+        for (long n = 999999000; n < 1000000000; n++) {
+            assertEquals(b.factorize(n), a.factorize(n));
+        }
+        for (int i = 0; i < 200; i++) {
+            long p = BigInteger.probablePrime(31, ThreadLocalRandom.current()).longValue();
+            long q = BigInteger.probablePrime(32, ThreadLocalRandom.current()).longValue();
+            assertEquals(MathToolTest.getArrayAsList(new long[]{Math.min(p, q), Math.max(p, q)}), a.factorize(p * q));
+            long n = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            List<Long> factors = a.factorize(n);
+            assertEquals(n, factors.stream().mapToLong(Long::longValue).reduce(1, (x, y) -> x * y));
+            for (long factor : factors) {
+                assertTrue(MillerRabinTest.getInstance().isPrime(factor));
+            }
+        }
+    }
+
+    @Test
+    public void squareFormsFactorizationTest() {
+        FactorizationAlgorithm[] algorithms = {SquareFormsFactorization.getInstance(),
+                SquareFormsFactorization.getInstance(MillerRabinTest.getInstance(), ForkJoinPool.commonPool())};
+        for (FactorizationAlgorithm a : algorithms) {
+            assertEquals(MathToolTest.getArrayAsList(pf16), a.factorize( getNumberFromFactorization(pf16)));
+            assertEquals(MathToolTest.getArrayAsList(pf60), a.factorize( getNumberFromFactorization(pf60)));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{7, 7, 73, 127, 337, 92737, 649657}), a.factorize(Long.MAX_VALUE));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{2147483647L, 4294967291L}), a.factorize(2147483647L * 4294967291L));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{1073741789L, 1073741789L}), a.factorize(1073741789L * 1073741789L));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{1048573, 1048573, 1048573}), a.factorize(1048573L * 1048573L * 1048573L));
+            assertEquals(0, a.factorize(1).size());
+            for (long n = 999999000; n < 1000000000; n++) {
+                assertEquals(PollardRhoFactorization.getInstance().factorize(n), a.factorize(n));
+            }
+            for (int i = 0; i < 200; i++) {
+                int bits = ThreadLocalRandom.current().nextInt(20, 32);
+                long p = BigInteger.probablePrime(bits, ThreadLocalRandom.current()).longValue();
+                long q = BigInteger.probablePrime(bits, ThreadLocalRandom.current()).longValue();
+                assertEquals(MathToolTest.getArrayAsList(new long[]{Math.min(p, q), Math.max(p, q)}), a.factorize(p * q));
+                long n = ThreadLocalRandom.current().nextLong(1, 1L << 62);
+                List<Long> factors = a.factorize(n);
+                assertEquals(n, factors.stream().mapToLong(Long::longValue).reduce(1, (x, y) -> x * y));
+                for (long factor : factors) {
+                    assertTrue(MillerRabinTest.getInstance().isPrime(factor));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void hybridFactorizationTest() {
+        FactorizationAlgorithm[] algorithms = {HybridFactorization.getInstance(),
+                HybridFactorization.getInstance(16, 0, 64), HybridFactorization.getInstance(1 << 20, 1 << 12, 0)};
+        for (FactorizationAlgorithm a : algorithms) {
+            assertEquals(MathToolTest.getArrayAsList(pf16), a.factorize( getNumberFromFactorization(pf16)));
+            assertEquals(MathToolTest.getArrayAsList(pf60), a.factorize( getNumberFromFactorization(pf60)));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{7, 7, 73, 127, 337, 92737, 649657}), a.factorize(Long.MAX_VALUE));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{2147483647L, 4294967291L}), a.factorize(2147483647L * 4294967291L));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{3037000493L, 3037000493L}), a.factorize(3037000493L * 3037000493L));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{46337, 46337, 46337, 46337}), a.factorize(46337L * 46337L * 46337L * 46337L));
+            assertEquals(Collections.nCopies(39, 3L), a.factorize(4052555153018976267L));
+            assertEquals(MathToolTest.getArrayAsList(new long[]{9223372036854775783L}), a.factorize(9223372036854775783L));
+            assertEquals(0, a.factorize(1).size());
+            for (long n = 999999000; n < 1000000000; n++) {
+                assertEquals(PollardRhoFactorization.getInstance().factorize(n), a.factorize(n));
+            }
+            for (int i = 0; i < 200; i++) {
+                int bits = ThreadLocalRandom.current().nextInt(12, 32);
+                long p = BigInteger.probablePrime(bits, ThreadLocalRandom.current()).longValue();
+                long q = BigInteger.probablePrime(63 - bits, ThreadLocalRandom.current()).longValue();
+                assertEquals(MathToolTest.getArrayAsList(new long[]{Math.min(p, q), Math.max(p, q)}), a.factorize(p * q));
+                long n = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+                List<Long> factors = a.factorize(n);
+                assertEquals(n, factors.stream().mapToLong(Long::longValue).reduce(1, (x, y) -> x * y));
+                for (long factor : factors) {
+                    assertTrue(MillerRabinTest.getInstance().isPrime(factor));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hybridFactorizationExceptionTest() {
+        HybridFactorization.getInstance(8, 0, 0);
+    }
+
+    @Test
+    public void smallestPrimeFactorTableTest() {
+        SmallestPrimeFactorTable a = SmallestPrimeFactorTable.getInstance(10000000);
+        assertEquals(10000000, a.getUpperBound());
+        assertEquals(MathToolTest.getArrayAsList(pf16), a.factorize( getNumberFromFactorization(pf16)));
+        assertEquals(MathToolTest.getArrayAsList(pf60), a.factorize( getNumberFromFactorization(pf60)));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{9999991}), a.factorize(9999991));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{3137, 3137}), a.factorize(3137 * 3137));
+        assertEquals(MathToolTest.getArrayAsList(new long[]{2, 3, 3, 5, 5, 7, 7, 7, 11}), a.factorize(2L * 9 * 25 * 343 * 11));
+        assertEquals(0, a.factorize(1).size());
+        assertEquals(3137, a.smallestPrimeFactor(3137 * 3163));
+        assertEquals(5, a.smallestPrimeFactor(25));
+        assertEquals(9999991, a.smallestPrimeFactor(9999991));
+        FactorizationAlgorithm b = PollardRhoFactorization.getInstance();
+        for (int i = 0; i < 10000; i++) {
+            int n = ThreadLocalRandom.current().nextInt(1, 10000001);
+            assertEquals(b.factorize(n), a.factorize(n));
+        }
+        long[] next = {9990000};
+        a.factorizeRange(9990000, 10000000, (number, factors, count) -> {
+            assertEquals(next[0]++, number);
+            List<Long> expected = b.factorize(number);
+            assertEquals(expected.size(), count);
+            for (int i = 0; i < count; i++) {
+                assertEquals((long) expected.get(i), factors[i]);
+            }
+        });
+        assertEquals(10000001, next[0]);
+        SmallestPrimeFactorTable small = SmallestPrimeFactorTable.getInstance(1);
+        small.factorizeRange(1, 1, (number, factors, count) -> assertEquals(0, count));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallestPrimeFactorTableExceptionTest() {
+        SmallestPrimeFactorTable.getInstance(1000).factorize(1001);
+    }
+
+    @Test
+    public void segmentedFactorSieveTest() {
+        SegmentedFactorSieve[] sieves = {SegmentedFactorSieve.getInstance(), SegmentedFactorSieve.getInstance(4),
+                SegmentedFactorSieve.getInstance(ForkJoinPool.commonPool(), 2)};
+        FactorizationAlgorithm b = PollardRhoFactorization.getInstance();
+        long[] lowerBounds = {1, 1000000000000L, 1L << 50, Long.MAX_VALUE - 20000};
+        for (SegmentedFactorSieve a : sieves) {
+            for (long lowerBound : lowerBounds) {
+                long upperBound = lowerBound + 20000;
+                long[] next = {lowerBound};
+                a.factorize(lowerBound, upperBound, (number, factors, count) -> {
+                    assertEquals(next[0]++, number);
+                    List<Long> expected = b.factorize(number);
+                    assertEquals(expected.size(), count);
+                    for (int i = 0; i < count; i++) {
+                        assertEquals((long) expected.get(i), factors[i]);
+                    }
+                });
+                assertEquals(upperBound + 1, next[0]);
+            }
+            List<Long> single = new ArrayList<>();
+            a.factorize(205891132094649L, 205891132094649L, (number, factors, count) -> {
+                for (int i = 0; i < count; i++) {
+                    single.add(factors[i]);
+                }
+            });
+            assertEquals(Collections.nCopies(30, 3L), single);
+            a.factorize(10, 9, (number, factors, count) -> fail());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentedFactorSieveExceptionTest() {
+        SegmentedFactorSieve.getInstance().factorize(0, 10, (number, factors, count) -> {});
+    }
+
+    @Test
+    public void ellipticCurveFactorizationTest() {
+        BigFactorizationAlgorithm[] algorithms = {EllipticCurveFactorization.getInstance(),
+                EllipticCurveFactorization.getInstance(ForkJoinPool.commonPool())};
+        for (BigFactorizationAlgorithm a : algorithms) {
+            BigInteger p = BigInteger.probablePrime(36, ThreadLocalRandom.current());
+            BigInteger q = BigInteger.probablePrime(40, ThreadLocalRandom.current());
+            BigInteger r = BigInteger.probablePrime(160, ThreadLocalRandom.current());
+            List<BigInteger> expected = new ArrayList<>(Arrays.asList(BigInteger.valueOf(3), BigInteger.valueOf(65537), p, q, r));
+            Collections.sort(expected);
+            BigInteger n = expected.stream().reduce(BigInteger.ONE, BigInteger::multiply);
+            assertEquals(expected, a.factorize(n));
+            BigInteger power = BigInteger.probablePrime(70, ThreadLocalRandom.current());
+            assertEquals(Collections.nCopies(3, power), a.factorize(power.pow(3)));
+            assertEquals(Collections.singletonList(r), a.factorize(r));
+            assertEquals(Arrays.asList(BigInteger.valueOf(2147483647L), BigInteger.valueOf(4294967291L)),
+                    a.factorize(BigInteger.valueOf(2147483647L * 4294967291L)));
+            assertEquals(0, a.factorize(BigInteger.ONE).size());
+        }
+        BigInteger p = new BigInteger("1000000000039");
+        BigInteger n = p.multiply(BigInteger.probablePrime(128, ThreadLocalRandom.current()));
+        BigInteger factor = EllipticCurveFactorization.getInstance().findFactor(n, 2000, 200);
+        assertEquals(BigInteger.ZERO, n.mod(factor));
+        assertTrue(factor.compareTo(BigInteger.ONE) > 0 && factor.compareTo(n) < 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ellipticCurveFactorizationExceptionTest() {
+        EllipticCurveFactorization.getInstance().factorize(BigInteger.ZERO);
+    }
+
+    @Test
+    public void quadraticSieveFactorizationTest() {
+        List<QuadraticSieveFactorization.Progress> progress = Collections.synchronizedList(new ArrayList<>());
+        BigFactorizationAlgorithm[] algorithms = {QuadraticSieveFactorization.getInstance(),
+                QuadraticSieveFactorization.getInstance(ForkJoinPool.commonPool(), progress::add)};
+        for (BigFactorizationAlgorithm a : algorithms) {
+            BigInteger p = BigInteger.probablePrime(66, ThreadLocalRandom.current());
+            BigInteger q = BigInteger.probablePrime(67, ThreadLocalRandom.current());
+            List<BigInteger> expected = new ArrayList<>(Arrays.asList(BigInteger.valueOf(7), p, q));
+            Collections.sort(expected);
+            assertEquals(expected, a.factorize(BigInteger.valueOf(7).multiply(p).multiply(q)));
+            BigInteger power = BigInteger.probablePrime(40, ThreadLocalRandom.current());
+            assertEquals(Collections.nCopies(2, power), a.factorize(power.pow(2)));
+            assertEquals(Collections.singletonList(q), a.factorize(q));
+            assertEquals(0, a.factorize(BigInteger.ONE).size());
+        }
+        QuadraticSieveFactorization.Progress last = progress.get(progress.size() - 1);
+        assertTrue(last.getFullRelations() + last.getCombinedRelations() >= last.getRequiredRelations());
+        assertTrue(last.getPolynomials() > 0);
+        BigInteger n = BigInteger.probablePrime(80, ThreadLocalRandom.current())
+                .multiply(BigInteger.probablePrime(80, ThreadLocalRandom.current()));
+        BigInteger factor = QuadraticSieveFactorization.getInstance().findFactor(n);
+        assertEquals(BigInteger.ZERO, n.mod(factor));
+        assertTrue(factor.compareTo(BigInteger.ONE) > 0 && factor.compareTo(n) < 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quadraticSieveFactorizationExceptionTest() {
+        QuadraticSieveFactorization.getInstance().factorize(BigInteger.valueOf(-15));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pollardRhoFactorizationExceptionTest() {
+        PollardRhoFactorization.getInstance().factorize(-6);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void factorizationByDivisionExceptionTest() {
         FactorizationAlgorithm a = FactorizationByDivision.getInstance(SieveOfSundaram.getInstance());
-        a.factorize(Integer.MAX_VALUE);
+        a.factorize(0);
     }
 
     private static long getNumberFromFactorization(long[] arr) {
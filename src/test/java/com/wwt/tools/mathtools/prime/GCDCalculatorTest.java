@@ -57,6 +57,18 @@ public class GCDCalculatorTest {
         assertEquals(4,calc.getGreatestCommonDivisor(-12356,-1544));
 
     }
+    @Test
+    public void getExtendedEuclideanGCDTest() {
+        ExtendedEuclideanAlgorithm calc = ExtendedEuclideanAlgorithm.getInstance();
+        assertEquals(5,calc.getGreatestCommonDivisor(25,5));
+        assertEquals(3,calc.getGreatestCommonDivisor(3,39));
+        assertEquals(1,calc.getGreatestCommonDivisor(17,4523));
+        assertEquals(6,calc.getGreatestCommonDivisor(12,18));
+        assertEquals(4,calc.getGreatestCommonDivisor(-12356,-1544));
+        assertEquals(7,calc.getGreatestCommonDivisor(0,7));
+        assertEquals(1,(5 * calc.getInverseModulo(5,4523)) % 4523);
+    }
+
     @Test
     public void speedTest() {
         GreatestCommonDivisorAlgorithm rcalc = RecursiveGCDAlgorithm.getInstance();
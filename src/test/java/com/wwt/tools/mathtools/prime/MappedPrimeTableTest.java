@@ -0,0 +1,95 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedPrimeTableTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeAndOpenTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("primes.tab");
+        MappedPrimeTable.write(file, 2000000);
+        MappedPrimeTable table = MappedPrimeTable.open(file);
+        PrimeSequence expected = SieveOfEratosthenes.getInstance().getPrimeSequence(2000000);
+        assertEquals(expected.size(), table.size());
+        assertEquals(2000000, table.getUpperBound());
+        assertArrayEquals(expected.toIntArray(), table.getPrimeSequence(2000000).toIntArray());
+        for (int i = 0; i < expected.size(); i += 97) {
+            assertEquals(expected.getInt(i), table.nthPrime(i + 1));
+        }
+        assertEquals(expected.getInt(expected.size() - 1), table.nthPrime(table.size()));
+        assertEquals(0, table.pi(1));
+        assertEquals(1, table.pi(2));
+        assertEquals(25, table.pi(100));
+        assertEquals(78498, table.pi(1000000));
+        for (int i = 0; i < 1000; i++) {
+            int x = ThreadLocalRandom.current().nextInt(2000000);
+            int index = expected.indexOf(x);
+            long pi = index >= 0 ? index + 1 : expected.intStream().filter(p -> p <= x).count();
+            assertEquals(pi, table.pi(x));
+            assertEquals(index >= 0, table.isPrime(x));
+        }
+        assertArrayEquals(new long[]{1000003, 1000033, 1000037, 1000039},
+                table.stream(1000000, 1000039).toArray());
+        assertEquals(0, table.getPrimeSequence(24, 28).size());
+        assertEquals(expected.size(), table.stream(0, Long.MAX_VALUE).count());
+        assertFalse(Files.exists(file.resolveSibling("primes.tab.tmp")));
+    }
+
+    @Test
+    public void smallTableTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("small.tab");
+        MappedPrimeTable.write(file, 1);
+        MappedPrimeTable table = MappedPrimeTable.open(file);
+        assertEquals(0, table.size());
+        assertEquals(0, table.pi(1));
+        assertFalse(table.iterator(0, 1).hasNext());
+        MappedPrimeTable.write(file, 3);
+        table = MappedPrimeTable.open(file);
+        assertEquals(2, table.size());
+        assertTrue(table.isPrime(3));
+        assertEquals(3, table.nthPrime(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void piExceptionTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("primes.tab");
+        MappedPrimeTable.write(file, 1000);
+        MappedPrimeTable.open(file).pi(1001);
+    }
+
+    @Test(expected = IOException.class)
+    public void openExceptionTest() throws IOException {
+        Path file = folder.newFile("garbage.tab").toPath();
+        Files.write(file, new byte[100]);
+        MappedPrimeTable.open(file);
+    }
+}
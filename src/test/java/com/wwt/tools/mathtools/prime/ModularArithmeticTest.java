@@ -0,0 +1,141 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import com.wwt.tools.mathtools.MathTool;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class ModularArithmeticTest {
+
+    private final ModularArithmetic modularArithmetic = ModularArithmetic.getInstance(IterativeGCDAlgorithm.getInstance());
+
+    @Test
+    public void inverseTest() {
+        assertEquals(5, modularArithmetic.inverse(3, 7));
+        assertEquals(2, modularArithmetic.inverse(-3, 7));
+        assertEquals(0, modularArithmetic.inverse(5, 1));
+        for (int i = 0; i < 1000; i++) {
+            long mod = ThreadLocalRandom.current().nextLong(2, Long.MAX_VALUE);
+            long a = ThreadLocalRandom.current().nextLong();
+            if (BigInteger.valueOf(a).gcd(BigInteger.valueOf(mod)).equals(BigInteger.ONE)) {
+                assertEquals(BigInteger.valueOf(a).modInverse(BigInteger.valueOf(mod)).longValue(), modularArithmetic.inverse(a, mod));
+            }
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void inverseExceptionTest() {
+        modularArithmetic.inverse(6, 9);
+    }
+
+    @Test
+    public void batchInverseTest() {
+        long [] mods = {1000000007L, 4611686018427387847L, 1L << 40};
+        for (long mod : mods) {
+            long [] values = new long[1001];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ThreadLocalRandom.current().nextLong(1, mod) | 1;
+            }
+            long [] results = new long[values.length];
+            modularArithmetic.batchInverse(values, mod, results);
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(1, MathTool.multiplyModulo(values[i], results[i], mod));
+            }
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void batchInverseExceptionTest() {
+        long [] values = {3, 5, 14, 9};
+        modularArithmetic.batchInverse(values, 7, new long[4]);
+    }
+
+    @Test
+    public void chineseRemainderTest() {
+        assertEquals(23, modularArithmetic.chineseRemainder(new long[]{2, 3, 2}, new long[]{3, 5, 7}));
+        assertEquals(10, modularArithmetic.chineseRemainder(new long[]{4, 10}, new long[]{6, 15}));
+        long [] moduli = {1000000007L, 998244353L};
+        long x = 123456789012345678L;
+        long [] residues = new long[moduli.length];
+        for (int i = 0; i < moduli.length; i++) {
+            residues[i] = x % moduli[i];
+        }
+        assertEquals(x, modularArithmetic.chineseRemainder(residues, moduli));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void chineseRemainderExceptionTest() {
+        modularArithmetic.chineseRemainder(new long[]{1, 2}, new long[]{4, 6});
+    }
+
+    @Test
+    public void jacobiSymbolTest() {
+        for (int n = 1; n < 200; n += 2) {
+            for (int a = -50; a < 200; a++) {
+                assertEquals(naiveJacobi(a, n), modularArithmetic.jacobiSymbol(a, n));
+            }
+        }
+    }
+
+    @Test
+    public void squareRootTest() {
+        // 998244353 = 119*2^23+1 uses Cipolla, the others Tonelli-Shanks
+        long [] primes = {2, 3, 13, 17, 1000000007L, 998244353L, 4611686018427387847L, 2305843009213693951L};
+        for (long p : primes) {
+            for (int i = 0; i < 100; i++) {
+                long r = ThreadLocalRandom.current().nextLong(p);
+                long a = MathTool.multiplyModulo(r, r, p);
+                long root = modularArithmetic.squareRoot(a, p);
+                assertEquals(a, MathTool.multiplyModulo(root, root, p));
+            }
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void squareRootExceptionTest() {
+        modularArithmetic.squareRoot(3, 7);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void squareRootEvenModulusTest() {
+        modularArithmetic.squareRoot(1, 8);
+    }
+
+    private static int naiveJacobi(long a, long n) {
+        int result = 1;
+        long rest = n;
+        for (long p = 3; rest > 1; p += 2) {
+            while (rest % p == 0) {
+                rest /= p;
+                result *= naiveLegendre(a, p);
+            }
+        }
+        return result;
+    }
+
+    private static int naiveLegendre(long a, long p) {
+        long r = Math.floorMod(a, p);
+        if (r == 0) return 0;
+        for (long x = 1; x < p; x++) {
+            if (x * x % p == r) return 1;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,86 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrimeCountingTest {
+
+    @Test
+    public void smallPrimeCountingTest() {
+        PrimeCounting counting = PrimeCounting.getInstance();
+        PrimeSequence primes = SieveOfEratosthenes.getInstance().getPrimeSequence(20000);
+        int index = 0;
+        long sum = 0;
+        for (int x = -1; x <= 20000; x++) {
+            while(index < primes.size() && primes.getInt(index) <= x) {
+                sum += primes.getInt(index++);
+            }
+            assertEquals(index, counting.pi(x));
+            assertEquals(BigInteger.valueOf(sum), counting.primeSum(x));
+        }
+    }
+
+    @Test
+    public void primeCountingTest() {
+        PrimeCounting counting = PrimeCounting.getInstance();
+        assertEquals(50847534, counting.pi(1000000000));
+        assertEquals(455052511, counting.pi(10000000000L));
+        assertEquals(new BigInteger("24739512092254535"), counting.primeSum(1000000000));
+        assertEquals(new BigInteger("201467077743744681014"), counting.primeSum(100000000000L));
+        long x = 123456789012L;
+        long pi = SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(x - 10000000, x).size();
+        assertEquals(counting.pi(x) - counting.pi(x - 10000001), pi);
+    }
+
+    @Test
+    public void parallelPrimeCountingTest() {
+        PrimeCounting counting = PrimeCounting.getInstance(ForkJoinPool.commonPool());
+        assertEquals(4118054813L, counting.pi(100000000000L));
+        assertEquals(new BigInteger("2220822432581729238"), counting.primeSum(10000000000L));
+        assertEquals(PrimeCounting.getInstance().pi(98765432198L), counting.pi(98765432198L));
+    }
+
+    @Test
+    public void nthPrimeTest() {
+        PrimeCounting counting = PrimeCounting.getInstance();
+        PrimeSequence primes = SieveOfEratosthenes.getInstance().getPrimeSequence(5000000);
+        for (int k = 1; k <= primes.size(); k += k < 1000 ? 1 : 997) {
+            assertEquals(primes.getInt(k - 1), counting.nthPrime(k));
+        }
+        assertEquals(22801763489L, counting.nthPrime(1000000000));
+        assertEquals(252097800623L, counting.nthPrime(10000000000L));
+        for (long k = 123456789; k < 123456789 + 5; k++) {
+            long prime = counting.nthPrime(k);
+            assertEquals(k, counting.pi(prime));
+            assertEquals(k - 1, counting.pi(prime - 1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nthPrimeExceptionTest() {
+        PrimeCounting.getInstance().nthPrime(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void primeCountingExceptionTest() {
+        PrimeCounting.getInstance().pi(Long.MAX_VALUE);
+    }
+}
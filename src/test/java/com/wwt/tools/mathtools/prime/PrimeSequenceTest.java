@@ -17,7 +17,13 @@ package com.wwt.tools.mathtools.prime;
 import com.wwt.tools.mathtools.MathToolTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.Assert.*;
 
@@ -50,6 +56,212 @@ public class PrimeSequenceTest {
         assertEquals(2,l.get(0).intValue());
     }
 
+    @Test
+    public void SegmentedSieveOfEratosthenesTest() {
+        int number = 100;
+        PrimeSequenceGenerator psg = SegmentedSieveOfEratosthenes.getInstance();
+        List<Integer> l = psg.getPrimeSequence(number);
+        assertEquals(MathToolTest.getArrayAsList(p100),l);
+        number=2;
+        l = psg.getPrimeSequence(number);
+        assertEquals(1,l.size());
+        assertEquals(2,l.get(0).intValue());
+        number = 1000000;
+        assertEquals(SieveOfEratosthenes.getInstance().getPrimeSequence(number),
+                SegmentedSieveOfEratosthenes.getInstance(64).getPrimeSequence(number));
+    }
+
+    @Test
+    public void SegmentedSieveOfEratosthenesRangeTest() {
+        List<Long> l = new ArrayList<>();
+        SegmentedSieveOfEratosthenes.getInstance().sieve(90,100,l::add);
+        assertEquals(Arrays.asList(97L),l);
+        l.clear();
+        SegmentedSieveOfEratosthenes.getInstance().sieve(97,97,l::add);
+        assertEquals(Arrays.asList(97L),l);
+        l.clear();
+        SegmentedSieveOfEratosthenes.getInstance().sieve(24,28,l::add);
+        assertTrue(l.isEmpty());
+
+        long lowerBound = 1000000000000L;
+        long upperBound = lowerBound + 100000;
+        l.clear();
+        SegmentedSieveOfEratosthenes.getInstance(1000).sieve(lowerBound,upperBound,l::add);
+        List<Long> expected = new ArrayList<>();
+        ProbabilisticPrimeTest test = MillerRabinTest.getInstance();
+        for (long n = lowerBound; n <= upperBound; n++) {
+            if(test.isPrime(n,20)) expected.add(n);
+        }
+        assertEquals(expected,l);
+    }
+
+    @Test
+    public void primitivePrimeSequenceTest() {
+        PrimeSequenceGenerator [] generators = {SieveOfEratosthenes.getInstance(), SieveOfSundaram.getInstance(),
+                SegmentedSieveOfEratosthenes.getInstance(), WheelSieveOfEratosthenes.getInstance()};
+        for (PrimeSequenceGenerator psg : generators) {
+            PrimeSequence s = psg.getPrimeSequence(100);
+            assertArrayEquals(p100, s.toIntArray());
+            assertArrayEquals(p100, s.intStream().toArray());
+            assertEquals(1060, s.longStream().sum());
+            assertEquals(97, s.getInt(24));
+            assertEquals(24, s.indexOf(97));
+            assertEquals(-1, s.indexOf(98));
+            assertTrue(s.contains(2));
+            assertEquals(26, psg.getPrimeSequence(101).size());
+            assertEquals(101, psg.getPrimeSequence(101).getInt(25));
+            assertEquals(2, psg.getPrimeSequence(3).size());
+
+            int [] buffer = new int[10];
+            assertEquals(25, psg.fillPrimeSequence(100, buffer));
+            assertArrayEquals(Arrays.copyOf(p100, 10), buffer);
+            buffer = new int[30];
+            assertEquals(25, psg.fillPrimeSequence(100, buffer));
+            assertArrayEquals(p100, Arrays.copyOf(buffer, 25));
+            assertEquals(78498, psg.getPrimeSequence(1000000).size());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void primitivePrimeSequenceExceptionTest() {
+        SieveOfEratosthenes.getInstance().getPrimeSequence(100).getInt(25);
+    }
+
+    @Test
+    public void longPrimeSequenceTest() {
+        LongPrimeSequence s = SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(10000000000L, 10000000100L);
+        assertArrayEquals(new long[]{10000000019L, 10000000033L, 10000000061L, 10000000069L, 10000000097L}, s.toLongArray());
+        assertEquals(10000000061L, s.getLong(2));
+        assertEquals(2, s.indexOf(10000000061L));
+        assertEquals(5, s.longStream().count());
+        long [] buffer = new long[3];
+        assertEquals(3, s.copyInto(buffer, 0));
+        assertEquals(10000000061L, buffer[2]);
+    }
+
+    @Test
+    public void WheelSieveOfEratosthenesTest() {
+        PrimeSequenceGenerator psg = WheelSieveOfEratosthenes.getInstance();
+        assertEquals(MathToolTest.getArrayAsList(p100),psg.getPrimeSequence(100));
+        for (int number = 2; number < 40; number++) {
+            assertEquals(SieveOfEratosthenes.getInstance().getPrimeSequence(number), psg.getPrimeSequence(number));
+        }
+        int number = 5000000;
+        assertEquals(SieveOfEratosthenes.getInstance().getPrimeSequence(number), psg.getPrimeSequence(number));
+    }
+
+    @Test
+    public void WheelSieveOfEratosthenesRangeTest() {
+        WheelSieveOfEratosthenes sieve = WheelSieveOfEratosthenes.getInstance();
+        long lowerBound = 1000000000000L - 12345;
+        long upperBound = lowerBound + 3000000;
+        assertEquals(SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(lowerBound, upperBound),
+                sieve.getPrimeSequence(lowerBound, upperBound));
+        // p*k of the first multiple overflows for windows near the documented maximum
+        upperBound = Long.MAX_VALUE - 30;
+        lowerBound = upperBound - 1000;
+        assertEquals(SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(lowerBound, upperBound),
+                sieve.getPrimeSequence(lowerBound, upperBound));
+        assertEquals(Arrays.asList(17L,19L,23L,29L,31L), sieve.getPrimeSequence(17, 31));
+        assertEquals(Arrays.asList(3L,5L), sieve.getPrimeSequence(3, 6));
+        assertTrue(sieve.getPrimeSequence(24, 28).isEmpty());
+    }
+
+    @Test
+    public void PrimeCacheTest() throws Exception {
+        PrimeCache cache = PrimeCache.getInstance();
+        assertArrayEquals(p100, cache.getPrimeSequence(100).toIntArray());
+        PrimeSequence expected = SieveOfEratosthenes.getInstance().getPrimeSequence(3000000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        int bound = ThreadLocalRandom.current().nextInt(2, 3000000);
+                        PrimeSequence primes = cache.getPrimeSequence(bound);
+                        int size = (int) expected.intStream().filter(p -> p <= bound).count();
+                        assertEquals(size, primes.size());
+                        assertEquals(expected.getInt(size - 1), primes.getInt(size - 1));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.getBound() >= 1 << 16);
+    }
+
+    @Test
+    public void PrimeIteratorTest() {
+        PrimeIterator iterator = PrimeIterator.getInstance();
+        PrimeSequence expected = SieveOfEratosthenes.getInstance().getPrimeSequence(3000000);
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(iterator.hasNext());
+            assertEquals(expected.getInt(i), iterator.nextLong());
+        }
+        assertEquals(3000017, iterator.nextLong());
+        iterator.skipTo(90);
+        assertEquals(97, iterator.nextLong());
+        iterator.skipTo(97);
+        assertEquals(97, iterator.nextLong());
+        iterator.skipTo(-10);
+        assertEquals(2, iterator.nextLong());
+        assertEquals(3, iterator.nextLong());
+
+        long lowerBound = 1000000000000L;
+        LongPrimeSequence window = SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(lowerBound, lowerBound + 2000000);
+        iterator = PrimeIterator.getInstance(lowerBound);
+        for (int i = 0; i < window.size(); i++) {
+            assertEquals(window.getLong(i), iterator.nextLong());
+        }
+    }
+
+    @Test
+    public void PrimeIteratorStreamTest() {
+        assertArrayEquals(p100, PrimeIterator.stream().limit(25).mapToInt(p -> (int) p).toArray());
+        assertEquals(10000000019L, PrimeIterator.stream(10000000000L).findFirst().getAsLong());
+        assertEquals(168, PrimeIterator.stream().filter(p -> p < 1000).limit(168).count());
+    }
+
+    @Test
+    public void ParallelSieveOfEratosthenesTest() {
+        PrimeSequenceGenerator psg = ParallelSieveOfEratosthenes.getInstance();
+        assertEquals(MathToolTest.getArrayAsList(p100),psg.getPrimeSequence(100));
+        assertEquals(1,psg.getPrimeSequence(2).size());
+        int number = 10000000;
+        assertEquals(SieveOfEratosthenes.getInstance().getPrimeSequence(number),
+                ParallelSieveOfEratosthenes.getInstance(3).getPrimeSequence(number));
+    }
+
+    @Test
+    public void ParallelSieveOfEratosthenesRangeTest() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ParallelSieveOfEratosthenes sieve = ParallelSieveOfEratosthenes.getInstance(executor, 4);
+            long lowerBound = 1000000000000L;
+            long upperBound = lowerBound + 20000000;
+            LongPrimeSequence expected = SegmentedSieveOfEratosthenes.getInstance().getPrimeSequence(lowerBound, upperBound);
+            assertEquals(expected, sieve.getPrimeSequence(lowerBound, upperBound));
+            List<Long> l = new ArrayList<>();
+            sieve.sieve(lowerBound, upperBound, l::add);
+            assertEquals(expected, l);
+            assertEquals(Arrays.asList(2L,3L,5L,7L), sieve.getPrimeSequence(-5, 10));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ParallelSieveOfEratosthenesExceptionTest() {
+        ParallelSieveOfEratosthenes.getInstance(0);
+    }
+
     @SuppressWarnings("unused")
     @Test(expected = IllegalArgumentException.class)
     public void SieveOfEratosthenesExceptionTest() {
@@ -0,0 +1,79 @@
+/* Copyright 2018-2019 Wehe Web Technologies
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.wwt.tools.mathtools.prime;
+
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+
+public class PrimeTableTest {
+
+    @Test
+    public void primeTableTest() {
+        int bound = 3000000;
+        PrimeTable table = PrimeTable.getInstance(bound);
+        PrimeSequence primes = SieveOfEratosthenes.getInstance().getPrimeSequence(bound);
+        assertEquals(bound, table.getBound());
+        assertEquals(primes.size(), table.size());
+        int index = 0;
+        for (int n = 0; n <= bound; n++) {
+            boolean prime = index < primes.size() && primes.getInt(index) == n;
+            if(prime) index++;
+            assertEquals(prime, table.isPrime(n));
+            assertEquals(index, table.pi(n));
+        }
+        for (int i = 0; i < primes.size(); i++) {
+            assertEquals(primes.getInt(i), table.nthPrime(i + 1));
+        }
+        assertEquals(2, table.nextPrime(-5));
+        assertEquals(2, table.nextPrime(1));
+        assertEquals(3, table.nextPrime(2));
+        assertEquals(3, table.prevPrime(5));
+        assertEquals(2, table.prevPrime(3));
+        for (int i = 0; i < 1000; i++) {
+            int n = ThreadLocalRandom.current().nextInt(3, 2999000);
+            int position = (int) table.pi(n);
+            assertEquals(primes.getInt(position), table.nextPrime(n));
+            assertEquals(primes.getInt((int) table.pi(n - 1) - 1), table.prevPrime(n));
+        }
+    }
+
+    @Test
+    public void smallBoundTest() {
+        for (int bound = 0; bound < 100; bound++) {
+            PrimeTable table = PrimeTable.getInstance(bound);
+            assertEquals(SieveOfEratosthenes.getInstance().getPrimeSequence(Math.max(2, bound)).intStream().filter(p -> p <= table.getBound()).count(),
+                    table.size());
+            assertEquals(table.size(), table.pi(bound));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundExceptionTest() {
+        PrimeTable.getInstance(1000).isPrime(1001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nextPrimeExceptionTest() {
+        PrimeTable.getInstance(1000).nextPrime(997);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBoundExceptionTest() {
+        PrimeTable.getInstance(PrimeTable.MAX_BOUND + 1);
+    }
+}
@@ -16,6 +16,12 @@ package com.wwt.tools.mathtools.prime;
 
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -73,6 +79,8 @@ public class PrimeTestTest {
         assertFalse(test.isPrime(772191,50));
         assertFalse(test.isPrime(772193,50));
         assertFalse(test.isPrime(778113,50));
+        assertTrue(test.isPrime(2305843009213693951L,20));
+        assertFalse(test.isPrime(2147483647L*2147483629L,20));
     }
 
     @Test
@@ -122,6 +130,8 @@ public class PrimeTestTest {
         assertFalse(test.isPrime(772191,50));
         assertFalse(test.isPrime(772193,50));
         assertFalse(test.isPrime(778113,50));
+        assertTrue(test.isPrime(2305843009213693951L,20));
+        assertFalse(test.isPrime(2147483647L*2147483629L,20));
     }
 
     @Test
@@ -171,7 +181,154 @@ public class PrimeTestTest {
         assertFalse(test.isPrime(772191,50));
         assertFalse(test.isPrime(772193,50));
         assertFalse(test.isPrime(778113,50));
+        assertTrue(test.isPrime(2305843009213693951L,20));
+        assertFalse(test.isPrime(2147483647L*2147483629L,20));
+
+    }
+
+    @Test
+    public void primeTableFastPathTest() {
+        PrimeTable table = PrimeTable.getInstance(1000000);
+        ProbabilisticPrimeTest[] tests = {MillerRabinTest.getInstance(table), FermatPrimeTest.getInstance(gcdCalculator1, table)};
+        for (ProbabilisticPrimeTest test : tests) {
+            assertTrue(test.isPrime(2,1));
+            assertFalse(test.isPrime(1,1));
+            assertFalse(test.isPrime(561,1));
+            assertTrue(test.isPrime(976777,1));
+            assertFalse(test.isPrime(772193,1));
+            assertTrue(test.isPrime(2305843009213693951L,20));
+            assertFalse(test.isPrime(2147483647L*2147483629L,20));
+        }
+    }
+
+    @Test
+    public void deterministicMillerRabinTest() {
+        PrimeTest test = MillerRabinTest.getInstance();
+        PrimeSequence primes = SieveOfEratosthenes.getInstance().getPrimeSequence(2000000);
+        for (int n = -5, index = 0; n <= 2000000; n++) {
+            boolean prime = index < primes.size() && primes.getInt(index) == n;
+            if (prime) index++;
+            assertEquals(prime, test.isPrime(n));
+        }
+        long[] strongPseudoprimes = {2047, 1373653, 25326001, 3215031751L, 2152302898747L, 3474749660383L,
+                341550071728321L, 3825123056546413051L, 561, 1105, 1729, 341531, 1050535501, 350269456337L,
+                55245642489451L, 7999252175582851L, 585226005592931977L, 2147483647L * 2147483629L};
+        for (long n : strongPseudoprimes) {
+            assertFalse(test.isPrime(n));
+        }
+        assertTrue(test.isPrime(2305843009213693951L));
+        assertTrue(test.isPrime(9223372036854775783L));
+        for (int bits = 12; bits <= 63; bits++) {
+            for (int i = 0; i < 2000; i++) {
+                long n = ThreadLocalRandom.current().nextLong(1L << (bits - 1), bits == 63 ? Long.MAX_VALUE : 1L << bits) | 1;
+                assertEquals(BigInteger.valueOf(n).isProbablePrime(64), test.isPrime(n));
+            }
+        }
+    }
+
+    @Test
+    public void bailliePSWTest() {
+        BailliePSWTest test = BailliePSWTest.getInstance();
+        PrimeSequence primes = SieveOfEratosthenes.getInstance().getPrimeSequence(2000000);
+        for (int n = -5, index = 0; n <= 2000000; n++) {
+            boolean prime = index < primes.size() && primes.getInt(index) == n;
+            if (prime) index++;
+            assertEquals(prime, test.isPrime(n));
+            assertEquals(prime, test.isPrime(n, 1));
+        }
+        long[] pseudoprimes = {2047, 3277, 4033, 4681, 8321, 5459, 5777, 10877, 16109, 18971, 3215031751L,
+                3825123056546413051L, 2147483647L * 2147483629L, 3037000493L * 3037000493L};
+        for (long n : pseudoprimes) {
+            assertFalse(test.isPrime(n));
+            assertFalse(test.isPrime(BigInteger.valueOf(n)));
+        }
+        for (int i = 0; i < 20000; i++) {
+            long n = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE) | 1;
+            assertEquals(BigInteger.valueOf(n).isProbablePrime(64), test.isPrime(n));
+        }
+        assertTrue(test.isPrime(9223372036854775783L));
+        assertTrue(test.isPrime(BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE)));
+        assertTrue(test.isPrime(BigInteger.ONE.shiftLeft(521).subtract(BigInteger.ONE)));
+        assertFalse(test.isPrime(BigInteger.ONE.shiftLeft(523).subtract(BigInteger.ONE)));
+        // factor = 53 mod 4*3*5*...*47, so (D/n) = 1 for all D from 5 to -51 and the search for D ends with (53/n) = 0
+        BigInteger factor = new BigInteger("1229779565176982873");
+        assertTrue(test.isPrime(factor));
+        assertFalse(test.isPrime(factor.multiply(BigInteger.valueOf(53))));
+        for (int bits = 64; bits <= 512; bits *= 2) {
+            for (int i = 0; i < 50; i++) {
+                BigInteger p = BigInteger.probablePrime(bits, ThreadLocalRandom.current());
+                BigInteger q = BigInteger.probablePrime(bits, ThreadLocalRandom.current());
+                assertTrue(test.isPrime(p));
+                assertFalse(test.isPrime(p.multiply(q)));
+                assertFalse(test.isPrime(p.multiply(p)));
+                BigInteger n = new BigInteger(bits, ThreadLocalRandom.current()).setBit(0);
+                assertEquals(n.isProbablePrime(100), test.isPrime(n));
+            }
+        }
+    }
+
+    @Test
+    public void bigIntegerPrimeTest() {
+        ProbabilisticPrimeTest[] tests = {MillerRabinTest.getInstance(), MillerRabinTest.getInstance(ForkJoinPool.commonPool()),
+                FermatPrimeTest.getInstance(gcdCalculator1), FermatPrimeTest.getInstance(gcdCalculator1, ForkJoinPool.commonPool())};
+        BigInteger composite = new BigInteger("3825123056546413051").multiply(BigInteger.valueOf(1000003));
+        for (ProbabilisticPrimeTest test : tests) {
+            assertTrue(test.isPrime(BigInteger.valueOf(997), 5));
+            assertFalse(test.isPrime(BigInteger.valueOf(-997), 5));
+            assertTrue(test.isPrime(BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE), 5));
+            assertTrue(test.isPrime(BigInteger.ONE.shiftLeft(607).subtract(BigInteger.ONE), 5));
+            assertFalse(test.isPrime(BigInteger.ONE.shiftLeft(127).add(BigInteger.ONE), 5));
+            assertFalse(test.isPrime(composite, 5));
+            assertFalse(test.isPrime(composite.negate(), 5));
+            for (int bits = 64; bits <= 1024; bits *= 2) {
+                for (int i = 0; i < 5; i++) {
+                    BigInteger p = BigInteger.probablePrime(bits, ThreadLocalRandom.current());
+                    BigInteger q = BigInteger.probablePrime(bits, ThreadLocalRandom.current());
+                    assertTrue(test.isPrime(p, 8));
+                    assertFalse(test.isPrime(p.multiply(q), 8));
+                    BigInteger n = new BigInteger(bits, ThreadLocalRandom.current()).setBit(bits - 1).setBit(0);
+                    assertEquals(n.isProbablePrime(100), test.isPrime(n, 8));
+                }
+            }
+        }
+        BigInteger pseudoprimeSquare = new BigInteger("3825123056546413051").pow(2);
+        assertFalse(MillerRabinTest.getInstance().isPrime(pseudoprimeSquare, 10));
+        assertTrue(BailliePSWTest.getInstance().isPrime(BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE), 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bigIntegerPrimeExceptionTest() {
+        ProbabilisticPrimeTest test = (numberToTest, iterations) -> true;
+        test.isPrime(BigInteger.ONE.shiftLeft(64), 1);
+    }
+
+    @Test
+    public void batchPrimeTest() {
+        long[] candidates = new long[5000];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = i < 3000 ? i - 100 : ThreadLocalRandom.current().nextLong(Long.MAX_VALUE) | 1;
+        }
+        candidates[4999] = 9223372036854775783L;
+        BatchPrimeTest[] tests = {BatchPrimeTest.getInstance(), BatchPrimeTest.getInstance(BailliePSWTest.getInstance()),
+                BatchPrimeTest.getInstance(MillerRabinTest.getInstance(), ForkJoinPool.commonPool())};
+        for (BatchPrimeTest test : tests) {
+            long[] bitmap = test.isPrime(candidates);
+            assertEquals(79, bitmap.length);
+            for (int i = 0; i < candidates.length; i++) {
+                boolean prime = candidates[i] > 1 && BigInteger.valueOf(candidates[i]).isProbablePrime(64);
+                assertEquals(prime, (bitmap[i >>> 6] & (1L << i)) != 0);
+            }
+            long[] reused = new long[bitmap.length];
+            reused[0] = -1;
+            test.isPrime(candidates, reused);
+            assertTrue(Arrays.equals(bitmap, reused));
+        }
+        assertEquals(0, BatchPrimeTest.getInstance().isPrime(new long[0]).length);
+    }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void batchPrimeExceptionTest() {
+        BatchPrimeTest.getInstance().isPrime(new long[65], new long[1]);
     }
 
 }
@@ -14,6 +14,7 @@
  */
 package com.wwt.tools.mathtools.visibilitytest;
 
+import com.wwt.tools.mathtools.BigMontgomeryContext;
 import com.wwt.tools.mathtools.MathTool;
 import com.wwt.tools.mathtools.function.*;
 import com.wwt.tools.mathtools.prime.*;
@@ -21,7 +22,14 @@ import com.wwt.tools.mathtools.vector.ArrayMatrix;
 import com.wwt.tools.mathtools.vector.ArrayVector;
 import com.wwt.tools.mathtools.vector.Matrix;
 import com.wwt.tools.mathtools.vector.Vector;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertTrue;
 import static com.wwt.tools.mathtools.MathToolTest.*;
@@ -34,8 +42,11 @@ import static com.wwt.tools.mathtools.MathToolTest.*;
 @SuppressWarnings({"unused", "ResultOfMethodCallIgnored", "SpellCheckingInspection"})
 public class VisibilityTest {
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     @Test
-    public void test() {
+    public void test() throws IOException {
         /* package mathtools */
         MathTool.isSquare(39);
         MathTool.multiplyModulo(2,3,4);
@@ -76,12 +87,94 @@ public class VisibilityTest {
         prime5.getPrimeSequence(5);
         prime5 = SieveOfEratosthenes.getInstance();
         prime5.getPrimeSequence(4);
+        prime5 = SegmentedSieveOfEratosthenes.getInstance(1024);
+        prime5.getPrimeSequence(4);
+        SegmentedSieveOfEratosthenes.getInstance().sieve(10,20,prime->{});
+        prime5 = ParallelSieveOfEratosthenes.getInstance(2);
+        prime5.getPrimeSequence(4);
+        ParallelSieveOfEratosthenes.getInstance().getPrimeSequence(10,20);
+        prime5 = WheelSieveOfEratosthenes.getInstance();
+        prime5.getPrimeSequence(4);
+        WheelSieveOfEratosthenes.getInstance().getPrimeSequence(10,20);
+        PrimeIterator primeIterator = PrimeIterator.getInstance(10);
+        primeIterator.skipTo(20);
+        primeIterator.nextLong();
+        PrimeIterator.stream().limit(5).sum();
+        PrimeCache.getInstance().getPrimeSequence(1000);
+        PrimeCache.getInstance().getBound();
+        FactorizationByDivision.getInstance().factorize(1000);
+        PrimeCounting.getInstance().pi(1000);
+        PrimeCounting.getInstance().nthPrime(1000);
+        PrimeCounting.getInstance(ForkJoinPool.commonPool()).primeSum(1000);
+        PrimeTable primeTable = PrimeTable.getInstance(1000);
+        primeTable.isPrime(997);
+        primeTable.pi(997);
+        primeTable.nthPrime(10);
+        primeTable.nextPrime(100);
+        primeTable.prevPrime(100);
+        Path mappedFile = folder.newFile().toPath();
+        MappedPrimeTable.write(mappedFile, 1000);
+        MappedPrimeTable mappedTable = MappedPrimeTable.open(mappedFile);
+        mappedTable.size();
+        mappedTable.getUpperBound();
+        mappedTable.isPrime(997);
+        mappedTable.pi(997);
+        mappedTable.nthPrime(10);
+        mappedTable.iterator(100, 200).nextLong();
+        mappedTable.forEach(100, 200, prime -> {});
+        mappedTable.stream(100, 200).count();
+        mappedTable.getPrimeSequence(100L, 200L);
+        mappedTable.getPrimeSequence(1000);
+        MillerRabinTest.getInstance(primeTable).isPrime(997, 1);
+        PrimeTest primeTest = MillerRabinTest.getInstance();
+        primeTest.isPrime(997);
+        BailliePSWTest.getInstance().isPrime(997);
+        BigMontgomeryContext bigMontgomeryContext = BigMontgomeryContext.getInstance(BigInteger.valueOf(997));
+        int[] montgomeryValue = bigMontgomeryContext.toMontgomery(BigInteger.TEN);
+        bigMontgomeryContext.multiply(montgomeryValue, montgomeryValue, montgomeryValue);
+        bigMontgomeryContext.fromMontgomery(montgomeryValue);
+        BailliePSWTest.getInstance().isPrime(997, 1);
+        BailliePSWTest.getInstance().isPrime(BigInteger.valueOf(997));
+        BatchPrimeTest.getInstance().isPrime(new long[]{997, 999});
+        MillerRabinTest.getInstance(ForkJoinPool.commonPool()).isPrime(BigInteger.valueOf(997), 5);
+        FermatPrimeTest.getInstance(IterativeGCDAlgorithm.getInstance(), ForkJoinPool.commonPool()).isPrime(BigInteger.valueOf(997), 5);
+        BatchPrimeTest.getInstance(BailliePSWTest.getInstance(), ForkJoinPool.commonPool()).isPrime(new long[]{997}, new long[1]);
+        FermatPrimeTest.getInstance(IterativeGCDAlgorithm.getInstance(), primeTable).isPrime(997, 1);
         FactorizationAlgorithm prime6 = FermatFactorization.getInstance(MillerRabinTest.getInstance());
         prime6.factorize(12);
         FactorizationAlgorithm prime7 = FermatFactorization.getInstance(FermatPrimeTest.getInstance(prime1),12);
         prime7.factorize(12);
         FactorizationAlgorithm prime8 = FactorizationByDivision.getInstance(SieveOfEratosthenes.getInstance());
         prime8.factorize(12);
+        PollardRhoFactorization.getInstance().factorize(12);
+        PollardRhoFactorization.getInstance(BailliePSWTest.getInstance()).factorize(12);
+        SquareFormsFactorization.getInstance().factorize(12);
+        SquareFormsFactorization.getInstance(BailliePSWTest.getInstance()).factorize(12);
+        SquareFormsFactorization.getInstance(MillerRabinTest.getInstance(), ForkJoinPool.commonPool()).factorize(12);
+        BigFactorizationAlgorithm bigFactorization = EllipticCurveFactorization.getInstance();
+        bigFactorization.factorize(BigInteger.valueOf(12));
+        EllipticCurveFactorization.getInstance(ForkJoinPool.commonPool()).findFactor(BigInteger.valueOf(1000001), 2000, 1);
+        QuadraticSieveFactorization.getInstance().factorize(BigInteger.valueOf(12));
+        QuadraticSieveFactorization.getInstance(ForkJoinPool.commonPool(), progress -> progress.getRelationsPerSecond())
+                .findFactor(BigInteger.valueOf(4294967291L).multiply(BigInteger.valueOf(4294967279L)));
+        HybridFactorization.getInstance().factorize(12);
+        HybridFactorization.getInstance(1 << 8, 1 << 10, 48).factorize(12);
+        SmallestPrimeFactorTable spfTable = SmallestPrimeFactorTable.getInstance(1000);
+        spfTable.factorize(12);
+        spfTable.smallestPrimeFactor(12);
+        spfTable.getUpperBound();
+        spfTable.factorizeRange(1, 1000, (number, factors, count) -> {});
+        SegmentedFactorSieve.getInstance().factorize(1, 1000, (number, factors, count) -> {});
+        SegmentedFactorSieve.getInstance(2).factorize(1, 1000, (number, factors, count) -> {});
+        SegmentedFactorSieve.getInstance(ForkJoinPool.commonPool(), 2).factorize(1, 1000, (number, factors, count) -> {});
+        ExtendedEuclideanAlgorithm prime9 = ExtendedEuclideanAlgorithm.getInstance();
+        prime9.getInverseModulo(3,7);
+        ModularArithmetic prime10 = ModularArithmetic.getInstance(prime9);
+        prime10.inverse(3,7);
+        prime10.batchInverse(new long[]{3,5},7,new long[2]);
+        prime10.chineseRemainder(new long[]{2,3},new long[]{3,5});
+        prime10.jacobiSymbol(2,7);
+        prime10.squareRoot(2,7);
 
 
         /* Package vector */